@@ -0,0 +1,66 @@
+package com.zdonnell.geneticcars.benchmarks;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.zdonnell.geneticcars.Evaluator;
+import com.zdonnell.geneticcars.TerrainGenerator;
+import com.zdonnell.geneticcars.TerrainMode;
+
+/**
+ * Shared setup for the benchmarks, so every benchmark measures against the same world.
+ *
+ * @author Zach
+ */
+final class BenchmarkWorlds {
+
+	/**
+	 * The terrain seed every benchmark uses, so runs are comparable with each other
+	 */
+	static final long TERRAIN_SEED = 42;
+
+	/**
+	 * The seed of the random cars and breeding in every benchmark, for the same reason
+	 */
+	static final long GENOME_SEED = 7;
+
+	static {
+		// box2d lives in the gdx natives, which are normally loaded by the android backend
+		GdxNativesLoader.load();
+	}
+
+	private BenchmarkWorlds() {
+	}
+
+	/**
+	 * Makes sure the natives are loaded, for benchmarks whose worlds are created by the code
+	 * being measured rather than here.
+	 */
+	static void loadNatives() {
+		// The static initializer has done the work by now
+	}
+
+	/**
+	 * @return a new world with nothing in it
+	 */
+	static World createEmptyWorld() {
+		return new World(new Vector2(0, Evaluator.GRAVITY), true);
+	}
+
+	/**
+	 * @return a new world with the generated terrain already placed in it
+	 */
+	static World createWorld() {
+		return createWorld(TerrainMode.TILES);
+	}
+
+	/**
+	 * @param terrainMode how to build the terrain
+	 * @return a new world with the generated terrain already placed in it
+	 */
+	static World createWorld(TerrainMode terrainMode) {
+		World world = createEmptyWorld();
+		TerrainGenerator.generate(world, TERRAIN_SEED, terrainMode);
+		return world;
+	}
+}
@@ -0,0 +1,126 @@
+package com.zdonnell.geneticcars.benchmarks;
+
+import com.badlogic.gdx.physics.box2d.World;
+import com.zdonnell.geneticcars.Car;
+import com.zdonnell.geneticcars.CarDefinition;
+import com.zdonnell.geneticcars.CarFactory;
+import com.zdonnell.geneticcars.Rng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a whole generation of cars into a world (from scratch, as an elite clone and
+ * by breeding), and tearing one down again with {@link Car#removeFromWorld(World)}.  The cars
+ * built by each invocation are removed afterwards so the world doesn't keep growing.
+ *
+ * @author Zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CarFactoryBenchmark {
+
+	@Param({"10", "100", "500"})
+	public int populationSize;
+
+	private World world;
+
+	/**
+	 * The cars of the previous generation, used as parents and elites
+	 */
+	private Car[] parents;
+
+	/**
+	 * The cars built by the current invocation
+	 */
+	private Car[] built;
+
+	/**
+	 * The random numbers the parents are created and bred with
+	 */
+	private Rng rng;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		world = BenchmarkWorlds.createWorld();
+		rng = new Rng(BenchmarkWorlds.GENOME_SEED);
+		parents = new Car[populationSize];
+		for (int i = 0; i < populationSize; i++)
+			parents[i] = CarFactory.buildCar(new CarDefinition(rng), world, false);
+		built = new Car[populationSize];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		world.dispose();
+	}
+
+	@TearDown(Level.Invocation)
+	public void removeBuilt() {
+		for (int i = 0; i < built.length; i++) {
+			if (built[i] != null) {
+				built[i].removeFromWorld(world);
+				built[i] = null;
+			}
+		}
+	}
+
+	@Benchmark
+	public Car[] buildCar() {
+		for (int i = 0; i < populationSize; i++)
+			built[i] = CarFactory.buildCar(parents[i].getCarDefinition(), world, false);
+		return built;
+	}
+
+	@Benchmark
+	public Car[] buildClone() {
+		for (int i = 0; i < populationSize; i++)
+			built[i] = CarFactory.buildClone(parents[i], world);
+		return built;
+	}
+
+	@Benchmark
+	public Car[] buildBabyCar() {
+		for (int i = 0; i < populationSize; i++)
+			built[i] = CarFactory.buildBabyCar(parents[i], parents[(i + 1) % populationSize], world, rng);
+		return built;
+	}
+
+	/**
+	 * Removal needs a fresh set of cars for every invocation
+	 */
+	@State(Scope.Thread)
+	public static class RemovalState {
+		Car[] cars;
+
+		@Setup(Level.Invocation)
+		public void build(CarFactoryBenchmark benchmark) {
+			cars = new Car[benchmark.populationSize];
+			for (int i = 0; i < cars.length; i++)
+				cars[i] = CarFactory.buildCar(benchmark.parents[i].getCarDefinition(), benchmark.world, false);
+		}
+	}
+
+	@Benchmark
+	public void removeFromWorld(RemovalState state) {
+		for (Car car : state.cars)
+			car.removeFromWorld(world);
+	}
+}
@@ -0,0 +1,94 @@
+package com.zdonnell.geneticcars.benchmarks;
+
+import com.zdonnell.geneticcars.CarDefinition;
+import com.zdonnell.geneticcars.CarFactory;
+import com.zdonnell.geneticcars.Population;
+import com.zdonnell.geneticcars.Rng;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the pure-Java genetic operators: crossover plus mutation of a single child, and
+ * breeding a whole generation with {@link Population#nextGeneration()}.  None of this touches
+ * box2d, so it isolates the cost (and garbage) of the genome representation itself.<br><br>
+ *
+ * Each benchmark has a state of its own, so crossover isn't run once per population size and
+ * doesn't pay for the fitness reset only breeding needs.
+ *
+ * @author Zach
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GeneticOperatorsBenchmark {
+
+	/**
+	 * Two parents to breed from, set up once per trial
+	 */
+	@State(Scope.Thread)
+	public static class Parents {
+		CarDefinition parent1;
+		CarDefinition parent2;
+		Rng rng;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			rng = new Rng(BenchmarkWorlds.GENOME_SEED);
+			parent1 = new CarDefinition(rng);
+			parent2 = new CarDefinition(rng);
+		}
+	}
+
+	/**
+	 * A population to breed, given new distances before every invocation as breeding needs
+	 */
+	@State(Scope.Thread)
+	public static class Generation {
+
+		@Param({"10", "1000", "10000"})
+		public int populationSize;
+
+		Population population;
+		Rng rng;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			rng = new Rng(BenchmarkWorlds.GENOME_SEED);
+			population = new Population(populationSize, rng.split());
+		}
+
+		@Setup(Level.Invocation)
+		public void assignFitness() {
+			for (int i = 0; i < populationSize; i++)
+				population.setFitness(i, rng.nextFloat() * 100);
+		}
+	}
+
+	@Benchmark
+	public CarDefinition crossoverAndMutate(Parents parents) {
+		CarDefinition child = CarDefinition.geneticCrossover(parents.parent1, parents.parent2, parents.rng);
+		child.mutate(CarFactory.MUTATION_FACTOR, parents.rng);
+		return child;
+	}
+
+	@Benchmark
+	public Population nextGeneration(Generation generation) {
+		generation.population.nextGeneration();
+		return generation.population;
+	}
+}
@@ -0,0 +1,74 @@
+package com.zdonnell.geneticcars.benchmarks;
+
+import com.zdonnell.geneticcars.IslandModel;
+import com.zdonnell.geneticcars.PhysicsProfile;
+import com.zdonnell.geneticcars.TerrainMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long an {@link IslandModel} takes for every island to finish a fixed number of
+ * generations.  With one island per core the time should stay roughly flat as islands are added,
+ * and the islands' max distance shows whether migrating more often helps them along.
+ *
+ * @author Zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IslandModelBenchmark {
+
+	/**
+	 * The number of cars in each island's generations
+	 */
+	private static final int POPULATION_SIZE = 10;
+
+	/**
+	 * The number of cars sent in each migration
+	 */
+	private static final int MIGRANT_COUNT = 2;
+
+	/**
+	 * The generations every island finishes in each run
+	 */
+	private static final int GENERATIONS = 10;
+
+	@Param({"1", "2", "4"})
+	public int islandCount;
+
+	@Param({"1", "5"})
+	public int migrationInterval;
+
+	@Setup
+	public void setUp() {
+		BenchmarkWorlds.loadNatives();
+	}
+
+	@Benchmark
+	public float evolve() throws InterruptedException {
+		IslandModel model = new IslandModel(islandCount, POPULATION_SIZE, migrationInterval, MIGRANT_COUNT,
+				BenchmarkWorlds.TERRAIN_SEED, BenchmarkWorlds.GENOME_SEED, PhysicsProfile.STANDARD, TerrainMode.TILES);
+		model.start();
+		for (int island = 0; island < islandCount; island++) {
+			while (model.getGeneration(island) < GENERATIONS)
+				Thread.sleep(10);
+		}
+		model.stop();
+		return model.getMaxDistance();
+	}
+}
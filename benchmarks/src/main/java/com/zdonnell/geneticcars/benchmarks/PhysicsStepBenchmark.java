@@ -0,0 +1,74 @@
+package com.zdonnell.geneticcars.benchmarks;
+
+import com.badlogic.gdx.physics.box2d.World;
+import com.zdonnell.geneticcars.CarDefinition;
+import com.zdonnell.geneticcars.CarFactory;
+import com.zdonnell.geneticcars.PhysicsProfile;
+import com.zdonnell.geneticcars.Rng;
+import com.zdonnell.geneticcars.TerrainMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link World#step(float, int, int)} with a population of cars on the generated
+ * terrain.  The world is rebuilt at the start of every iteration, and each iteration then steps it
+ * thousands of times, so the average covers the cars from the moment they drop onto the ground
+ * until they have long since settled or driven off.  Cars are never removed, as nothing judges
+ * them here, so every one of them is stepped for the whole iteration.
+ *
+ * @author Zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PhysicsStepBenchmark {
+
+	@Param({"10", "100", "500"})
+	public int populationSize;
+
+	@Param({"8", "20"})
+	public int velocityIterations;
+
+	@Param({"3", "20"})
+	public int positionIterations;
+
+	@Param({"TILES", "CHAIN"})
+	public TerrainMode terrainMode;
+
+	private World world;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		world = BenchmarkWorlds.createWorld(terrainMode);
+		Rng rng = new Rng(BenchmarkWorlds.GENOME_SEED);
+		for (int i = 0; i < populationSize; i++)
+			CarFactory.buildCar(new CarDefinition(rng), world, false);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		world.dispose();
+	}
+
+	@Benchmark
+	public void step() {
+		world.step(PhysicsProfile.STANDARD.getTimeStep(), velocityIterations, positionIterations);
+	}
+}
@@ -0,0 +1,55 @@
+package com.zdonnell.geneticcars.benchmarks;
+
+import com.badlogic.gdx.physics.box2d.World;
+import com.zdonnell.geneticcars.TerrainGenerator;
+import com.zdonnell.geneticcars.TerrainMode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generating the terrain into an empty world.
+ *
+ * @author Zach
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TerrainBenchmark {
+
+	@Param({"TILES", "CHAIN"})
+	public TerrainMode terrainMode;
+
+	private World world;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		world = BenchmarkWorlds.createEmptyWorld();
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		world.dispose();
+	}
+
+	@Benchmark
+	public Object generate() {
+		return TerrainGenerator.generate(world, BenchmarkWorlds.TERRAIN_SEED, terrainMode);
+	}
+}
@@ -34,9 +34,9 @@ public class Car {
 	public float maxDistance = 0.0f;
 
 	/**
-	 * The last time (in ms) that the car successfully moved forward
+	 * How long (in simulated seconds) it has been since the car last beat its max distance
 	 */
-	public long timeLastMoved;
+	public float timeSinceProgress = 0.0f;
 
 	/**
 	 * This value is true if the car is an elite clone from the
@@ -44,6 +44,11 @@ public class Car {
 	 */
 	public boolean isElite = false;
 
+	/**
+	 * The index of this car within its generation, or -1 if it isn't part of one
+	 */
+	public int index = -1;
+
 	/**
 	 * Creates a car from the provided definition.
 	 */
@@ -52,8 +57,6 @@ public class Car {
 		this.chassis = chassis;
 		this.wheels = wheels;
 		this.isElite = isElite;
-
-		timeLastMoved = System.currentTimeMillis();
 	}
 
 	/**
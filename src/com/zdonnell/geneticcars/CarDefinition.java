@@ -1,95 +1,177 @@
 package com.zdonnell.geneticcars;
 
-import com.badlogic.gdx.math.Vector2;
+import java.util.Arrays;
 
 /**
  * This class is used to store a raw description of any given cars attributes.  Consider it the
- * blueprint or DNA used to build cars from.
+ * blueprint or DNA used to build cars from.<br><br>
+ *
+ * The attributes are kept in a single flat genome of floats: the x and y of each of the eight
+ * chassis vertices, followed by the density, radius and mount vertex of each wheel.  A whole
+ * definition is therefore one small array, which is cheap to copy, compare, hash and store.
  *
  * @author Zach
  */
 public class CarDefinition {
 
+	/**
+	 * The number of vertices (body segments) making up the chassis
+	 */
+	public final static int CHASSIS_VERTICES = 8;
+
+	/**
+	 * The number of wheels on each car
+	 */
+	public final static int WHEEL_COUNT = 2;
+
+	/**
+	 * The total number of floats in a genome
+	 */
+	public final static int GENOME_LENGTH = CHASSIS_VERTICES * 2 + WHEEL_COUNT * Wheel.ATTRIBUTE_COUNT;
+
 	/**
 	 * This is the total number of unique attributes a car has that can be mutated.
 	 *
-	 * @see #mutate(float)
-	 * @see #geneticCrossover(CarDefinition, CarDefinition)
+	 * @see #mutate(float, Rng)
+	 * @see #geneticCrossover(CarDefinition, CarDefinition, Rng)
 	 */
 	private final static int ATTRIBUTE_COUNT = 14;
 
 	/**
 	 * The max length that one of the body segments (lines) can be
 	 */
-	private final static float CHASSIS_MAX_AXIS = 1.1f;
+	final static float CHASSIS_MAX_AXIS = 1.1f;
 
 	/**
 	 * The min length that one of the body segments (lines) can be
 	 */
-	private final static float CHASSIS_MIN_AXIS = 0.1f;
+	final static float CHASSIS_MIN_AXIS = 0.1f;
+
+	/**
+	 * The direction each chassis vertex points along the x and y axis.  These keep the vertices
+	 * going around the center of the car in order, as box2d needs.
+	 */
+	final static int[] X_DIRECTION = {1, 1, 0, -1, -1, -1, 0, 1};
+	final static int[] Y_DIRECTION = {0, 1, 1, 1, 0, -1, -1, -1};
 
 	/**
-	 * Represents the raw values for the chassis bounds.
+	 * The offset in the genome of the first wheel attribute
 	 */
-	private Vector2[] bodySegments;
+	final static int WHEEL_OFFSET = CHASSIS_VERTICES * 2;
 
 	/**
-	 * Represents the raw values for the wheel definitions.
+	 * The raw values for the chassis vertices and wheels
 	 */
-	private Wheel[] wheels;
+	private final float[] genes;
 
 	/**
 	 * Creates a car with random attributes.
+	 *
+	 * @param rng the random numbers to pick the attributes with
 	 */
-	public CarDefinition() {
-		generateRandomAttributes();
+	public CarDefinition(Rng rng) {
+		genes = new float[GENOME_LENGTH];
+		generateRandomAttributes(rng);
 	}
 
 	/**
 	 * Creates a new car based on the provided raw data
 	 *
-	 * @param bodySegments
-	 * @param wheels
+	 * @param genes the genome, laid out as described in {@link CarDefinition}.  The array is
+	 *              used as is, not copied.
 	 */
-	public CarDefinition(Vector2[] bodySegments, Wheel[] wheels) {
-		this.bodySegments = bodySegments;
-		this.wheels = wheels;
+	public CarDefinition(float[] genes) {
+		this.genes = genes;
 	}
 
 	/**
 	 * Generates random attributes for the car's chassis
 	 * and it's wheels.
 	 */
-	private void generateRandomAttributes() {
-		// Create 2 random wheels
-		wheels = new Wheel[2];
-		for (int i = 0; i < 2; i++) {
-			wheels[i] = new Wheel();
+	private void generateRandomAttributes(Rng rng) {
+		for (int i = 0; i < CHASSIS_VERTICES; i++)
+			randomizeVertex(i, rng);
+
+		for (int i = 0; i < WHEEL_COUNT; i++) {
+			int offset = WHEEL_OFFSET + i * Wheel.ATTRIBUTE_COUNT;
+			genes[offset] = Wheel.randomDensity(rng);
+			genes[offset + 1] = Wheel.randomRadius(rng);
+			genes[offset + 2] = Wheel.randomVertex(rng);
 		}
-		// Create 8 random body segments
-		bodySegments = new Vector2[8];
-		bodySegments[0] = new Vector2((float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS, 0f);
-		bodySegments[1] = new Vector2((float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS, (float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
-		bodySegments[2] = new Vector2(0f, (float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
-		bodySegments[3] = new Vector2((float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS, (float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
-		bodySegments[4] = new Vector2((float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS, 0f);
-		bodySegments[5] = new Vector2((float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS, (float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS);
-		bodySegments[6] = new Vector2(0f, (float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS);
-		bodySegments[7] = new Vector2((float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS, (float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS);
 	}
 
 	/**
-	 * Returns the raw values for the chassis bounds.
+	 * Gives a chassis vertex a new random position, in the right general direction.
+	 *
+	 * @param vertex the number of the vertex
+	 * @param rng    the random numbers to pick the position with
+	 */
+	private void randomizeVertex(int vertex, Rng rng) {
+		genes[vertex * 2] = randomAxis(X_DIRECTION[vertex], rng);
+		genes[vertex * 2 + 1] = randomAxis(Y_DIRECTION[vertex], rng);
+	}
+
+	private static float randomAxis(int direction, Rng rng) {
+		if (direction == 0)
+			return 0f;
+		return direction * (rng.nextFloat() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
+	}
+
+	/**
+	 * Creates a copy of this definition, so the copy can be changed without
+	 * affecting the original.
+	 *
+	 * @return a new definition with the same attributes as this one
+	 */
+	public CarDefinition copy() {
+		return new CarDefinition(genes.clone());
+	}
+
+	/**
+	 * Returns the raw genome, laid out as described in {@link CarDefinition}.
 	 */
-	public Vector2[] getBodySegments() {
-		return bodySegments;
+	public float[] getGenes() {
+		return genes;
 	}
 
 	/**
-	 * Returns the raw values for the wheels
+	 * @param vertex the number of the chassis vertex
+	 * @return the x position of the vertex, relative to the center of the chassis
 	 */
-	public Wheel[] getWheels() {
-		return wheels;
+	public float getVertexX(int vertex) {
+		return genes[vertex * 2];
+	}
+
+	/**
+	 * @param vertex the number of the chassis vertex
+	 * @return the y position of the vertex, relative to the center of the chassis
+	 */
+	public float getVertexY(int vertex) {
+		return genes[vertex * 2 + 1];
+	}
+
+	/**
+	 * @param wheel the number of the wheel
+	 * @return the wheel's density attribute.
+	 */
+	public float getWheelDensity(int wheel) {
+		return genes[WHEEL_OFFSET + wheel * Wheel.ATTRIBUTE_COUNT];
+	}
+
+	/**
+	 * @param wheel the number of the wheel
+	 * @return the wheel's radius attribute.
+	 */
+	public float getWheelRadius(int wheel) {
+		return genes[WHEEL_OFFSET + wheel * Wheel.ATTRIBUTE_COUNT + 1];
+	}
+
+	/**
+	 * @param wheel the number of the wheel
+	 * @return the wheel's mount vertex
+	 */
+	public int getWheelVertex(int wheel) {
+		return (int) genes[WHEEL_OFFSET + wheel * Wheel.ATTRIBUTE_COUNT + 2];
 	}
 
 	/**
@@ -105,14 +187,14 @@ public class CarDefinition {
 	 * <p/>
 	 * For our case the attributes look like this
 	 * <ol>
-	 * <li>Body Segment 1 (Vector2)</li>
-	 * <li>Body Segment 2 (Vector2)</li>
-	 * <li>Body Segment 3 (Vector2)</li>
-	 * <li>Body Segment 4 (Vector2)</li>
-	 * <li>Body Segment 5 (Vector2)</li>
-	 * <li>Body Segment 6 (Vector2)</li>
-	 * <li>Body Segment 7 (Vector2)</li>
-	 * <li>Body Segment 8 (Vector2)</li>
+	 * <li>Body Segment 1 (x, y)</li>
+	 * <li>Body Segment 2 (x, y)</li>
+	 * <li>Body Segment 3 (x, y)</li>
+	 * <li>Body Segment 4 (x, y)</li>
+	 * <li>Body Segment 5 (x, y)</li>
+	 * <li>Body Segment 6 (x, y)</li>
+	 * <li>Body Segment 7 (x, y)</li>
+	 * <li>Body Segment 8 (x, y)</li>
 	 * <li>Wheel 1 Density</li>
 	 * <li>Wheel 1 Radius</li>
 	 * <li>Wheel 1 Vertex</li>
@@ -120,32 +202,30 @@ public class CarDefinition {
 	 * <li>Wheel 2 Radius</li>
 	 * <li>Wheel 2 Vertex</li>
 	 * </ol>
+	 * The attributes are laid out in this same order in the genome, so the child is just the
+	 * start of one parent's genome followed by the rest of the other's.
 	 *
-	 * @param p1 the first parent used in reproduction
-	 * @param p2 the second parent used in reproduction
+	 * @param p1  the first parent used in reproduction
+	 * @param p2  the second parent used in reproduction
+	 * @param rng the random numbers to pick the split point with
 	 * @return the new born child
 	 */
-	public static CarDefinition geneticCrossover(CarDefinition p1, CarDefinition p2) {
-		int split = (int) (Math.random() * ATTRIBUTE_COUNT);
+	public static CarDefinition geneticCrossover(CarDefinition p1, CarDefinition p2, Rng rng) {
+		int split = rng.nextInt(ATTRIBUTE_COUNT);
 
-		// Select body segments from parents
-		Vector2[] childBodySegs = new Vector2[8];
-		int segNum = 0;
-		for (; segNum < 8; segNum++) {
-			childBodySegs[segNum] = new Vector2();
-			childBodySegs[segNum].set(segNum < split ? p1.getBodySegments()[segNum] : p2.getBodySegments()[segNum]);
-		}
+		// Convert the split attribute into a position in the genome.  A wheel attribute only
+		// comes from parent one when it is more than one place before the split point.
+		int geneSplit;
+		if (split <= CHASSIS_VERTICES)
+			geneSplit = split * 2;
+		else
+			geneSplit = WHEEL_OFFSET + split - CHASSIS_VERTICES - 1;
 
-		// Select wheel attributes from parents
-		Wheel[] wheels = new Wheel[2];
-		for (int i = 0; i < wheels.length; i++) {
-			double w1Den = (segNum + (i * 3 + 1) < split) ? p1.wheels[i].getDensity() : p2.wheels[i].getDensity();
-			double w1Rad = (segNum + (i * 3 + 2) < split) ? p1.wheels[i].getRadius() : p2.wheels[i].getRadius();
-			int w1Vert = (segNum + (i * 3 + 3) < split) ? p1.wheels[i].getVertex() : p2.wheels[i].getVertex();
-			wheels[i] = new Wheel(w1Den, w1Rad, w1Vert);
-		}
+		float[] childGenes = new float[GENOME_LENGTH];
+		System.arraycopy(p1.genes, 0, childGenes, 0, geneSplit);
+		System.arraycopy(p2.genes, geneSplit, childGenes, geneSplit, GENOME_LENGTH - geneSplit);
 
-		return new CarDefinition(childBodySegs, wheels);
+		return new CarDefinition(childGenes);
 	}
 
 	/**
@@ -157,30 +237,34 @@ public class CarDefinition {
 	 * attribute a 5% chance of being randomized.
 	 *
 	 * @param mutateFactor the mutation factor
+	 * @param rng          the random numbers to decide and make the mutations with
 	 */
-	public void mutate(float mutateFactor) {
+	public void mutate(float mutateFactor, Rng rng) {
 		// check for body/chassis mutations
-		// These have to be done individually to insure that body segments point the right general direction.
-		if (Math.random() < mutateFactor)
-			bodySegments[0] = new Vector2((float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS, 0f);
-		if (Math.random() < mutateFactor)
-			bodySegments[1] = new Vector2((float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS, (float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
-		if (Math.random() < mutateFactor)
-			bodySegments[2] = new Vector2(0f, (float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
-		if (Math.random() < mutateFactor)
-			bodySegments[3] = new Vector2((float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS, (float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS);
-		if (Math.random() < mutateFactor)
-			bodySegments[4] = new Vector2((float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS, 0f);
-		if (Math.random() < mutateFactor)
-			bodySegments[5] = new Vector2((float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS, (float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS);
-		if (Math.random() < mutateFactor)
-			bodySegments[6] = new Vector2(0f, (float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS);
-		if (Math.random() < mutateFactor)
-			bodySegments[7] = new Vector2((float) Math.random() * CHASSIS_MAX_AXIS + CHASSIS_MIN_AXIS, (float) -Math.random() * CHASSIS_MAX_AXIS - CHASSIS_MIN_AXIS);
+		for (int i = 0; i < CHASSIS_VERTICES; i++) {
+			if (rng.nextFloat() < mutateFactor)
+				randomizeVertex(i, rng);
+		}
 
 		// check for wheel mutations
-		for (int i = 0; i < 2; i++) {
-			wheels[i].mutate(mutateFactor);
+		for (int i = 0; i < WHEEL_COUNT; i++) {
+			int offset = WHEEL_OFFSET + i * Wheel.ATTRIBUTE_COUNT;
+			if (rng.nextFloat() < mutateFactor)
+				genes[offset] = Wheel.randomDensity(rng);
+			if (rng.nextFloat() < mutateFactor)
+				genes[offset + 1] = Wheel.randomRadius(rng);
+			if (rng.nextFloat() < mutateFactor)
+				genes[offset + 2] = Wheel.randomVertex(rng);
 		}
 	}
-}
\ No newline at end of file
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CarDefinition && Arrays.equals(genes, ((CarDefinition) o).genes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(genes);
+	}
+}
@@ -9,12 +9,14 @@ import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.physics.box2d.joints.RevoluteJointDef;
 
-import java.util.Arrays;
-
 /**
  * This class houses the car building methods.  This primarily involves creating the box2d physics
  * items from the specified {@link CarDefinition}.  There is no need to instantiate this class
- * as all methods are static.
+ * as all methods are static.<br><br>
+ *
+ * The box2d definitions and shapes used while building are reused from car to car rather than
+ * created for every fixture.  Each thread that builds cars gets its own set, which should be
+ * freed with {@link #releaseThreadResources()} when the thread is done building.
  *
  * @author Zach
  */
@@ -25,6 +27,28 @@ public class CarFactory {
 	 */
 	public static final int MOTOR_SPEED = 20;
 
+	/**
+	 * The chance each attribute of a baby car has of being randomized
+	 *
+	 * @see CarDefinition#mutate(float, Rng)
+	 */
+	public static final float MUTATION_FACTOR = 0.05f;
+
+	/**
+	 * The density of the chassis pieces
+	 */
+	static final float CHASSIS_DENSITY = 80;
+
+	/**
+	 * Where the center of each car's chassis starts, above the start of the terrain
+	 */
+	static final float SPAWN_X = 0f, SPAWN_Y = 0.5f;
+
+	/**
+	 * The reusable building objects of each thread building cars
+	 */
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+
 	/**
 	 * Given a provided CarDefinition, this function builds a fully
 	 * assembled Car, and places it in the physics world.
@@ -35,27 +59,28 @@ public class CarFactory {
 	 *         car definition
 	 */
 	public static Car buildCar(CarDefinition definition, World world, boolean isElite) {
+		Scratch s = getScratch();
+
 		// Create the box2d physics body for the chassis
-		BodyDef bodyDef = new BodyDef();
+		BodyDef bodyDef = s.bodyDef;
 		bodyDef.type = BodyDef.BodyType.DynamicBody;
-		bodyDef.position.set(0.0f, 0.5f);
+		bodyDef.position.set(SPAWN_X, SPAWN_Y);
 
 		Body body = world.createBody(bodyDef);
 
 		// Build the car chassis from the eight body segment vertices
 		// Eight individual pieces are needed because box2d does not support
 		// concave shapes, thus 8 convex triangles are used to build the chassis.
-		Vector2[] vertices = definition.getBodySegments();
-		for (int i = 0; i < vertices.length; i++) {
-			attachChassisPiece(body, vertices[i], vertices[(i + 1) % vertices.length]);
+		for (int i = 0; i < CarDefinition.CHASSIS_VERTICES; i++) {
+			attachChassisPiece(s, body, definition, i, (i + 1) % CarDefinition.CHASSIS_VERTICES);
 		}
 
 		// build the wheels
-		Body[] wheelBodies = new Body[2];
-		wheelBodies[0] = buildWheel(world, definition.getWheels()[0]);
-		wheelBodies[1] = buildWheel(world, definition.getWheels()[1]);
+		Body[] wheelBodies = new Body[CarDefinition.WHEEL_COUNT];
+		for (int i = 0; i < wheelBodies.length; i++)
+			wheelBodies[i] = buildWheel(s, world, definition, i);
 
-		attachWheels(world, body, vertices, wheelBodies, definition.getWheels());
+		attachWheels(s, world, body, definition, wheelBodies);
 
 		return new Car(definition, body, wheelBodies, isElite);
 	}
@@ -68,10 +93,7 @@ public class CarFactory {
 	 * @return the fully assembled car
 	 */
 	public static Car buildClone(Car elite, World world) {
-		Vector2[] bodySegCopy = Arrays.copyOfRange(elite.getCarDefinition().getBodySegments(), 0, 8);
-		Wheel[] wheelsCopy = Arrays.copyOfRange(elite.getCarDefinition().getWheels(), 0, 2);
-
-		return buildCar(new CarDefinition(bodySegCopy, wheelsCopy), world, true);
+		return buildCar(elite.getCarDefinition().copy(), world, true);
 	}
 
 	/**
@@ -81,36 +103,64 @@ public class CarFactory {
 	 * @param parent1 the first Parent
 	 * @param parent2 the Second Parent
 	 * @param world   the world to bring this baby into
+	 * @param rng     the random numbers to cross and mutate the parents with
 	 * @return The built car.
 	 */
-	public static Car buildBabyCar(Car parent1, Car parent2, World world) {
-		CarDefinition babyDefinition = CarDefinition.geneticCrossover(parent1.getCarDefinition(), parent2.getCarDefinition());
-		babyDefinition.mutate(0.05f);
+	public static Car buildBabyCar(Car parent1, Car parent2, World world, Rng rng) {
+		CarDefinition babyDefinition = CarDefinition.geneticCrossover(parent1.getCarDefinition(), parent2.getCarDefinition(), rng);
+		babyDefinition.mutate(MUTATION_FACTOR, rng);
 
 		return buildCar(babyDefinition, world, false);
 	}
 
+	/**
+	 * Disposes the shapes the calling thread has been reusing to build cars.  They are created
+	 * again if the thread builds another car.
+	 */
+	public static void releaseThreadResources() {
+		Scratch s = scratch.get();
+		if (s != null) {
+			NativeShapes.dispose(s.polygonShape);
+			NativeShapes.dispose(s.circleShape);
+			scratch.remove();
+		}
+	}
+
+	/**
+	 * @return the calling thread's reusable building objects
+	 */
+	private static Scratch getScratch() {
+		Scratch s = scratch.get();
+		if (s == null) {
+			s = new Scratch();
+			scratch.set(s);
+		}
+		return s;
+	}
+
 	/**
 	 * Builds a chassis piece for a car.  Due to how box2d works, we are
 	 * basically creating a series of triangles for the car.  Each chassis piece
 	 * created here is one triangle on the car body.  The two vertices passed, along
 	 * with the center point (0, 0) of the chassis will create the triangle.
 	 *
-	 * @param body the body to build the chassis pieces onto
-	 * @param v1 the first vertex to use on the triangle chassis piece
-	 * @param v2 the second vertex to use on the triangle chassis piece
+	 * @param s          the reusable building objects
+	 * @param body       the body to build the chassis pieces onto
+	 * @param definition the definition holding the chassis vertices
+	 * @param v1         the number of the first vertex to use on the triangle chassis piece
+	 * @param v2         the number of the second vertex to use on the triangle chassis piece
 	 */
-	private static void attachChassisPiece(Body body, Vector2 v1, Vector2 v2) {
-		Vector2[] pieceVertexes = new Vector2[3];
-		pieceVertexes[0] = v1;
-		pieceVertexes[1] = v2;
-		pieceVertexes[2] = new Vector2(0f, 0f);
-
-		FixtureDef fixDef = new FixtureDef();
-		PolygonShape pieceShape = new PolygonShape();
+	private static void attachChassisPiece(Scratch s, Body body, CarDefinition definition, int v1, int v2) {
+		Vector2[] pieceVertexes = s.triangle;
+		pieceVertexes[0].set(definition.getVertexX(v1), definition.getVertexY(v1));
+		pieceVertexes[1].set(definition.getVertexX(v2), definition.getVertexY(v2));
+		pieceVertexes[2].set(0f, 0f);
+
+		FixtureDef fixDef = s.fixtureDef;
+		PolygonShape pieceShape = s.polygonShape;
 		pieceShape.set(pieceVertexes);
 		fixDef.shape = pieceShape;
-		fixDef.density = 80;
+		fixDef.density = CHASSIS_DENSITY;
 		fixDef.friction = 10;
 		fixDef.restitution = 0f;
 		fixDef.filter.groupIndex = -1;
@@ -121,22 +171,25 @@ public class CarFactory {
 	/**
 	 * Creates the wheel body in the provided world.
 	 *
-	 * @param world the world that the wheel is to be created in
-	 * @param wheel the definition to create the wheel from
+	 * @param s          the reusable building objects
+	 * @param world      the world that the wheel is to be created in
+	 * @param definition the definition to create the wheel from
+	 * @param wheel      the number of the wheel in the definition
 	 * @return The created box2d body object representing the wheel
 	 */
-	private static Body buildWheel(World world, Wheel wheel) {
+	private static Body buildWheel(Scratch s, World world, CarDefinition definition, int wheel) {
 		// Build the box2d physics body for the wheel
-		BodyDef bodyDef = new BodyDef();
+		BodyDef bodyDef = s.bodyDef;
 		bodyDef.type = BodyDef.BodyType.DynamicBody;
+		bodyDef.position.set(0f, 0f);
 		Body wheelBody = world.createBody(bodyDef);
 
 		// Create the circle fixture representing the wheel shape
-		FixtureDef fixDef = new FixtureDef();
-		CircleShape circleShape = new CircleShape();
-		circleShape.setRadius((float) wheel.getRadius());
+		FixtureDef fixDef = s.fixtureDef;
+		CircleShape circleShape = s.circleShape;
+		circleShape.setRadius(definition.getWheelRadius(wheel));
 		fixDef.shape = circleShape;
-		fixDef.density = (float) wheel.getDensity();
+		fixDef.density = definition.getWheelDensity(wheel);
 		fixDef.friction = 1;
 		fixDef.restitution = 0f;
 		fixDef.filter.groupIndex = -1;
@@ -150,13 +203,13 @@ public class CarFactory {
 	 * Attaches the provided wheels to the specified chassis using
 	 * motorized joints.
 	 *
+	 * @param s           the reusable building objects
 	 * @param world       the world in which the assembly takes place
 	 * @param chassis     the chassis of the car to mount the wheels to
-	 * @param vertexes    the array of vertexes used to assemble the car
+	 * @param definition  the definition used to assemble the car
 	 * @param wheelBodies the box2d wheel body objects to mount to the car
-	 * @param wheelDefs   the definitions used to create the wheel bodies
 	 */
-	private static void attachWheels(World world, Body chassis, Vector2[] vertexes, Body[] wheelBodies, Wheel[] wheelDefs) {
+	private static void attachWheels(Scratch s, World world, Body chassis, CarDefinition definition, Body[] wheelBodies) {
 		// Calculate the total mass of the chassis and the wheels
 		double totalMass = chassis.getMass();
 		for (Body wheelBody : wheelBodies)
@@ -164,12 +217,12 @@ public class CarFactory {
 
 		// For each wheel provided create a motorized joint linking the wheel and the chassis
 		for (int i = 0; i < wheelBodies.length; i++) {
-			RevoluteJointDef jointDef = new RevoluteJointDef();
-			Vector2 vertex = vertexes[wheelDefs[i].getVertex()];
-			jointDef.localAnchorA.set(vertex.x, vertex.y);
+			RevoluteJointDef jointDef = s.jointDef;
+			int vertex = definition.getWheelVertex(i);
+			jointDef.localAnchorA.set(definition.getVertexX(vertex), definition.getVertexY(vertex));
 			jointDef.localAnchorB.set(0, 0);
 
-			jointDef.maxMotorTorque = (float) (totalMass * -world.getGravity().y / wheelDefs[i].getRadius());
+			jointDef.maxMotorTorque = (float) (totalMass * -world.getGravity().y / definition.getWheelRadius(i));
 			jointDef.motorSpeed = -MOTOR_SPEED;
 			jointDef.enableMotor = true;
 			jointDef.bodyA = chassis;
@@ -178,4 +231,18 @@ public class CarFactory {
 			world.createJoint(jointDef);
 		}
 	}
+
+	/**
+	 * The definitions and shapes a thread reuses to build cars.  box2d copies everything it needs
+	 * out of these when creating bodies, fixtures and joints, so they can be refilled for the next
+	 * piece straight away.
+	 */
+	private static class Scratch {
+		final BodyDef bodyDef = new BodyDef();
+		final FixtureDef fixtureDef = new FixtureDef();
+		final RevoluteJointDef jointDef = new RevoluteJointDef();
+		final PolygonShape polygonShape = NativeShapes.newPolygon();
+		final CircleShape circleShape = NativeShapes.newCircle();
+		final Vector2[] triangle = {new Vector2(), new Vector2(), new Vector2()};
+	}
 }
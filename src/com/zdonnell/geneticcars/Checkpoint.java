@@ -0,0 +1,380 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.Gdx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A snapshot of a running evolution: every genome of the current generation, how far each made it,
+ * the ids of each car and its parents, the terrain seed, the state of the population's random
+ * numbers, the index of genomes it has already bred, what its surrogate model has learned, the
+ * {@link FitnessCache} and the generation counters.  This is all that's needed to carry on
+ * evolving exactly where the snapshot was taken, so a long run survives the app being killed.<br><br>
+ *
+ * Checkpoints are stored in a small versioned binary format.  Saving copies the population on the
+ * calling thread (well under a hundred kilobytes) and writes it out on a background thread, first
+ * to a temporary file which then replaces the previous checkpoint, so a crash mid-write never
+ * leaves a half written checkpoint behind.
+ *
+ * @author Zach
+ */
+public class Checkpoint {
+
+	/**
+	 * The first bytes of every checkpoint file ("GCCK")
+	 */
+	private static final int MAGIC = 0x4743434B;
+
+	/**
+	 * Bumped whenever the layout of the file changes
+	 */
+	static final int VERSION = 6;
+
+	/**
+	 * The size (in bytes) of everything before the genomes
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+
+	/**
+	 * Writes the checkpoint files, one at a time, off the simulation thread
+	 */
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "checkpoint-writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final long terrainSeed;
+	private final long rngState;
+	private final int generation;
+	private final float maxDistance;
+	private final int maxDistanceGeneration;
+	private final int eliteCount;
+	private final long nextId;
+	private final float[] genes;
+	private final float[] fitness;
+	private final long[] ids;
+	private final long[] parentIds;
+	private final long[] genomeSlots;
+	private final int candidatesPerChild;
+
+	/**
+	 * The capacity of the population's surrogate model, 0 if it didn't have one
+	 */
+	private final int surrogateCapacity;
+	private final int surrogateNext;
+	private final float[] surrogateGenes;
+	private final float[] surrogateFitness;
+
+	/**
+	 * The fitness cache's results, least recently used first: the genome hash and terrain seed of
+	 * each, their physics keys and their distances
+	 */
+	private final long[] cacheKeys;
+	private final int[] cachePhysics;
+	private final float[] cacheDistances;
+
+	private Checkpoint(long terrainSeed, long rngState, int generation, float maxDistance, int maxDistanceGeneration,
+			int eliteCount, long nextId, float[] genes, float[] fitness, long[] ids, long[] parentIds, long[] genomeSlots,
+			int candidatesPerChild, int surrogateCapacity, int surrogateNext, float[] surrogateGenes, float[] surrogateFitness,
+			long[] cacheKeys, int[] cachePhysics, float[] cacheDistances) {
+		this.terrainSeed = terrainSeed;
+		this.rngState = rngState;
+		this.generation = generation;
+		this.maxDistance = maxDistance;
+		this.maxDistanceGeneration = maxDistanceGeneration;
+		this.eliteCount = eliteCount;
+		this.nextId = nextId;
+		this.genes = genes;
+		this.fitness = fitness;
+		this.ids = ids;
+		this.parentIds = parentIds;
+		this.genomeSlots = genomeSlots;
+		this.candidatesPerChild = candidatesPerChild;
+		this.surrogateCapacity = surrogateCapacity;
+		this.surrogateNext = surrogateNext;
+		this.surrogateGenes = surrogateGenes;
+		this.surrogateFitness = surrogateFitness;
+		this.cacheKeys = cacheKeys;
+		this.cachePhysics = cachePhysics;
+		this.cacheDistances = cacheDistances;
+	}
+
+	/**
+	 * Takes a snapshot of the population.  The population may carry on evolving straight away.
+	 *
+	 * @param population   the population to snapshot
+	 * @param terrainSeed  the seed of the terrain the population is evolving on
+	 * @param fitnessCache the results the population's cars are looked up in, or null if none
+	 * @return the snapshot
+	 */
+	public static Checkpoint of(Population population, long terrainSeed, FitnessCache fitnessCache) {
+		int size = population.size();
+		float[] genes = new float[size * CarDefinition.GENOME_LENGTH];
+		float[] fitness = new float[size];
+		long[] ids = new long[size];
+		long[] parentIds = new long[size * 2];
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(population.getDefinition(i).getGenes(), 0, genes, i * CarDefinition.GENOME_LENGTH, CarDefinition.GENOME_LENGTH);
+			fitness[i] = population.getFitness(i);
+			ids[i] = population.getId(i);
+			parentIds[i * 2] = population.getParentId(i, 0);
+			parentIds[i * 2 + 1] = population.getParentId(i, 1);
+		}
+
+		SurrogateModel surrogate = population.getSurrogate();
+		int surrogateSize = surrogate != null ? surrogate.size() : 0;
+		float[] surrogateGenes = new float[surrogateSize * CarDefinition.GENOME_LENGTH];
+		float[] surrogateFitness = new float[surrogateSize];
+		if (surrogate != null)
+			surrogate.copyTo(surrogateGenes, surrogateFitness);
+
+		// The cache can't change between sizing the arrays and copying, other threads only use
+		// caches of their own
+		int cacheSize = fitnessCache != null ? fitnessCache.size() : 0;
+		long[] cacheKeys = new long[cacheSize * 2];
+		int[] cachePhysics = new int[cacheSize];
+		float[] cacheDistances = new float[cacheSize];
+		if (fitnessCache != null)
+			fitnessCache.copyTo(cacheKeys, cachePhysics, cacheDistances);
+
+		return new Checkpoint(terrainSeed, population.getRng().getState(), population.getGeneration(), population.getMaxDistance(),
+				population.getMaxDistanceGeneration(), population.getEliteCount(), population.getNextId(),
+				genes, fitness, ids, parentIds, population.getGenomeSlots(), population.getCandidatesPerChild(),
+				surrogate != null ? surrogate.getCapacity() : 0, surrogate != null ? surrogate.getNext() : 0,
+				surrogateGenes, surrogateFitness, cacheKeys, cachePhysics, cacheDistances);
+	}
+
+	/**
+	 * @return the seed of the terrain the population was evolving on
+	 */
+	public long getTerrainSeed() {
+		return terrainSeed;
+	}
+
+	/**
+	 * Rebuilds the population exactly as it was when the snapshot was taken, random numbers and
+	 * surrogate model included, so it breeds exactly the generations it would have bred without
+	 * the break.
+	 *
+	 * @param selection picks the parents of each new generation
+	 * @return the restored population
+	 */
+	public Population toPopulation(SelectionScheme selection) {
+		CarDefinition[] definitions = new CarDefinition[fitness.length];
+		for (int i = 0; i < definitions.length; i++) {
+			float[] carGenes = new float[CarDefinition.GENOME_LENGTH];
+			System.arraycopy(genes, i * CarDefinition.GENOME_LENGTH, carGenes, 0, carGenes.length);
+			definitions[i] = new CarDefinition(carGenes);
+
+			// Only a checkpoint from a build with different gene ranges should need this
+			GenomeValidator.repair(definitions[i]);
+		}
+
+		Population population = new Population(definitions.length, eliteCount, selection, new Rng(rngState));
+		population.restore(definitions, fitness, ids, parentIds, nextId, generation, maxDistance, maxDistanceGeneration, rngState, genomeSlots);
+		if (surrogateCapacity > 0) {
+			SurrogateModel surrogate = new SurrogateModel(surrogateCapacity);
+			surrogate.restore(surrogateGenes, surrogateFitness, surrogateNext);
+			population.setSurrogate(surrogate, candidatesPerChild);
+		}
+		return population;
+	}
+
+	/**
+	 * Adds the fitness cache's results back to a cache, so cars simulated before the break
+	 * aren't simulated again, just as they wouldn't have been without it.
+	 *
+	 * @param fitnessCache the cache to restore into, normally a new one
+	 */
+	public void restoreFitnessCache(FitnessCache fitnessCache) {
+		fitnessCache.restore(cacheKeys, cachePhysics, cacheDistances);
+	}
+
+	/**
+	 * Writes the checkpoint to the file in the background, replacing any previous checkpoint there
+	 * once it is completely written.  Checkpoints are written in the order they are saved.
+	 *
+	 * @param file the file to write to
+	 */
+	public void save(final File file) {
+		final ByteBuffer buffer = encode();
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write(buffer, file);
+				} catch (IOException e) {
+					// Leave the previous checkpoint in place, the next one might succeed
+					Gdx.app.error("Checkpoint", "Failed to write checkpoint", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes the checkpoint file, once any checkpoints still waiting to be written are done.
+	 *
+	 * @param file the checkpoint file
+	 */
+	public static void delete(final File file) {
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				file.delete();
+			}
+		});
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #save(File)}.
+	 *
+	 * @param file the checkpoint file
+	 * @return the checkpoint, or null if there is no checkpoint file
+	 * @throws IOException if the file can't be read or isn't a valid checkpoint
+	 */
+	public static Checkpoint read(File file) throws IOException {
+		if (!file.exists())
+			return null;
+
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			long length = channel.size();
+			if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+				throw new IOException("Invalid checkpoint size " + length);
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0)
+					throw new IOException("Unexpected end of checkpoint");
+			}
+			buffer.flip();
+			return decode(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Lays the checkpoint out in the file format.
+	 */
+	private ByteBuffer encode() {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (genes.length + fitness.length + surrogateGenes.length + surrogateFitness.length + cacheDistances.length + cachePhysics.length) * 4
+				+ (ids.length + parentIds.length + genomeSlots.length + cacheKeys.length) * 8);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(terrainSeed);
+		buffer.putLong(rngState);
+		buffer.putInt(generation);
+		buffer.putFloat(maxDistance);
+		buffer.putInt(maxDistanceGeneration);
+		buffer.putInt(eliteCount);
+		buffer.putLong(nextId);
+		buffer.putInt(fitness.length);
+		buffer.putInt(CarDefinition.GENOME_LENGTH);
+		buffer.putInt(genomeSlots.length);
+		buffer.putInt(candidatesPerChild);
+		buffer.putInt(surrogateCapacity);
+		buffer.putInt(surrogateFitness.length);
+		buffer.putInt(surrogateNext);
+		buffer.putInt(cacheDistances.length);
+		buffer.asLongBuffer().put(ids).put(parentIds).put(genomeSlots).put(cacheKeys);
+		buffer.position(buffer.position() + (ids.length + parentIds.length + genomeSlots.length + cacheKeys.length) * 8);
+		buffer.asFloatBuffer().put(genes).put(fitness).put(surrogateGenes).put(surrogateFitness).put(cacheDistances);
+		buffer.position(buffer.position() + (genes.length + fitness.length + surrogateGenes.length + surrogateFitness.length + cacheDistances.length) * 4);
+		buffer.asIntBuffer().put(cachePhysics);
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Reads a checkpoint laid out by {@link #encode()}.
+	 */
+	private static Checkpoint decode(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("Not a checkpoint file");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported checkpoint version " + version);
+
+		long terrainSeed = buffer.getLong();
+		long rngState = buffer.getLong();
+		int generation = buffer.getInt();
+		float maxDistance = buffer.getFloat();
+		int maxDistanceGeneration = buffer.getInt();
+		int eliteCount = buffer.getInt();
+		long nextId = buffer.getLong();
+		int size = buffer.getInt();
+		int genomeLength = buffer.getInt();
+		int slotCount = buffer.getInt();
+		int candidatesPerChild = buffer.getInt();
+		int surrogateCapacity = buffer.getInt();
+		int surrogateSize = buffer.getInt();
+		int surrogateNext = buffer.getInt();
+		int cacheSize = buffer.getInt();
+		if (genomeLength != CarDefinition.GENOME_LENGTH)
+			throw new IOException("Checkpoint genomes have " + genomeLength + " genes, expected " + CarDefinition.GENOME_LENGTH);
+		if (size < 1 || eliteCount < 1 || eliteCount > size || slotCount < 0 || Integer.bitCount(slotCount) != 1
+				|| candidatesPerChild < 1 || surrogateCapacity < 0 || surrogateSize < 0 || surrogateSize > surrogateCapacity
+				|| surrogateNext < 0 || surrogateNext >= Math.max(surrogateCapacity, 1) || (surrogateSize < surrogateCapacity && surrogateNext != surrogateSize)
+				|| cacheSize < 0
+				|| buffer.remaining() != (size + (long) surrogateSize) * (genomeLength + 1) * 4 + (long) cacheSize * 2 * 4
+						+ (size * 3 + (long) slotCount + cacheSize * 2L) * 8)
+			throw new IOException("Corrupt checkpoint");
+
+		long[] ids = new long[size];
+		long[] parentIds = new long[size * 2];
+		long[] genomeSlots = new long[slotCount];
+		long[] cacheKeys = new long[cacheSize * 2];
+		buffer.asLongBuffer().get(ids).get(parentIds).get(genomeSlots).get(cacheKeys);
+		if (!GenomeIndex.isValidTable(genomeSlots, Population.rememberedGenomes(size)))
+			throw new IOException("Corrupt checkpoint genome index");
+		buffer.position(buffer.position() + (size * 3 + slotCount + cacheSize * 2) * 8);
+
+		float[] genes = new float[size * genomeLength];
+		float[] fitness = new float[size];
+		float[] surrogateGenes = new float[surrogateSize * genomeLength];
+		float[] surrogateFitness = new float[surrogateSize];
+		float[] cacheDistances = new float[cacheSize];
+		buffer.asFloatBuffer().get(genes).get(fitness).get(surrogateGenes).get(surrogateFitness).get(cacheDistances);
+		buffer.position(buffer.position() + (genes.length + fitness.length + surrogateGenes.length + surrogateFitness.length + cacheSize) * 4);
+
+		int[] cachePhysics = new int[cacheSize];
+		buffer.asIntBuffer().get(cachePhysics);
+
+		return new Checkpoint(terrainSeed, rngState, generation, maxDistance, maxDistanceGeneration, eliteCount, nextId,
+				genes, fitness, ids, parentIds, genomeSlots, candidatesPerChild, surrogateCapacity, surrogateNext,
+				surrogateGenes, surrogateFitness, cacheKeys, cachePhysics, cacheDistances);
+	}
+
+	/**
+	 * Writes the encoded checkpoint to a temporary file alongside the target, and then moves it
+	 * over the target.
+	 */
+	private static void write(ByteBuffer buffer, File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream output = new FileOutputStream(temp);
+		try {
+			FileChannel channel = output.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		} finally {
+			output.close();
+		}
+
+		if (!temp.renameTo(file))
+			throw new IOException("Could not replace " + file);
+	}
+}
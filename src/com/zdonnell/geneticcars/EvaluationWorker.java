@@ -0,0 +1,68 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A separate process that evaluates cars for a {@link RemoteEvaluator}.  It connects to the
+ * coordinator, builds its own world and terrain from the handshake, and then simulates each batch
+ * it is sent headlessly until the coordinator tells it to stop or goes away.<br><br>
+ *
+ * Run it on the desktop with the gdx natives on the class path:
+ * <pre>java -cp benchmarks.jar com.zdonnell.geneticcars.EvaluationWorker host port</pre>
+ *
+ * @author Zach
+ */
+public class EvaluationWorker {
+
+	private EvaluationWorker() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: EvaluationWorker <coordinator host> <coordinator port>");
+			System.exit(1);
+		}
+
+		// box2d lives in the gdx natives, which are normally loaded by the android backend
+		GdxNativesLoader.load();
+
+		Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+		socket.setTcpNoDelay(true);
+		try {
+			run(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+					new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Evaluates batches from the coordinator until it sends {@link WorkerProtocol#END_OF_WORK}.
+	 */
+	private static void run(DataInputStream in, DataOutputStream out) throws IOException {
+		long terrainSeed = WorkerProtocol.readHandshake(in);
+		PhysicsProfile profile = WorkerProtocol.readProfile(in);
+		TerrainMode terrainMode = WorkerProtocol.readTerrainMode(in);
+
+		World world = new World(new Vector2(0, Evaluator.GRAVITY), true);
+		try {
+			Evaluator evaluator = new Evaluator(world, TerrainGenerator.generateStreaming(world, terrainSeed, terrainMode), profile);
+
+			CarDefinition[] batch;
+			while ((batch = WorkerProtocol.readBatch(in)) != null)
+				WorkerProtocol.writeResults(out, evaluator.evaluate(batch));
+		} finally {
+			world.dispose();
+			CarFactory.releaseThreadResources();
+		}
+	}
+}
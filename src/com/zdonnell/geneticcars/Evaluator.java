@@ -0,0 +1,287 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Runs the physics simulation for a set of cars in a box2d World using a fixed, simulated
+ * timestep.  Nothing in here depends on the display or the wall clock, so a generation can be
+ * evaluated as fast as the CPU allows, and any given car is judged the same way no matter what
+ * frame rate the device happens to be running at.<br><br>
+ *
+ * The {@link Simulation} drives an Evaluator one step at a time and simply observes the
+ * active cars to draw them, while {@link #evaluate(CarDefinition[])} runs a whole batch of cars
+ * headlessly to completion.
+ *
+ * @author Zach
+ */
+public class Evaluator {
+
+	/**
+	 * The gravity (in m/s^2) along the y axis of every world cars are simulated in
+	 */
+	public static final float GRAVITY = -9.8f;
+
+	/**
+	 * How long (in simulated seconds) a car is allowed to go without beating its
+	 * previous max distance before it is killed
+	 */
+	public static final float STALL_TIMEOUT = 5f;
+
+	/**
+	 * The longest (in simulated seconds) a headless evaluation is allowed to run.  This is
+	 * only a safety net, so a car that somehow keeps creeping forward can't stall a batch forever.
+	 */
+	public static final float MAX_EVALUATION_TIME = 600f;
+
+	/**
+	 * The world the cars are simulated in, the terrain should already be placed in it
+	 */
+	private final World world;
+
+	/**
+	 * The terrain in {@link #world}, kept up with the cars if it is streaming
+	 */
+	private final Terrain terrain;
+
+	/**
+	 * The physics settings cars are simulated with
+	 */
+	private final PhysicsProfile profile;
+
+	/**
+	 * The list of cars still alive in this evaluator
+	 */
+	private final List<Car> activeCars = new ArrayList<Car>();
+
+	/**
+	 * The total amount of simulated time (in seconds) this evaluator has been stepped
+	 */
+	private float simulationTime = 0;
+
+	/**
+	 * Records the cars as they are stepped, or null to not record anything
+	 */
+	private TrajectoryRecorder recorder;
+
+	/**
+	 * Times each part of a step, or null to not time anything
+	 */
+	private Telemetry telemetry;
+
+	/**
+	 * Creates an evaluator that simulates cars in the provided world with the
+	 * {@link PhysicsProfile#STANDARD standard} physics settings.
+	 *
+	 * @param world   the world to simulate in
+	 * @param terrain the terrain generated in the world
+	 */
+	public Evaluator(World world, Terrain terrain) {
+		this(world, terrain, PhysicsProfile.STANDARD);
+	}
+
+	/**
+	 * Creates an evaluator that simulates cars in the provided world.
+	 *
+	 * @param world   the world to simulate in
+	 * @param terrain the terrain generated in the world
+	 * @param profile the physics settings to simulate with
+	 */
+	public Evaluator(World world, Terrain terrain, PhysicsProfile profile) {
+		this.world = world;
+		this.terrain = terrain;
+		this.profile = profile;
+	}
+
+	/**
+	 * @return the physics settings cars are simulated with
+	 */
+	public PhysicsProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return the world the cars are simulated in
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Adds an already built car to the set of cars being simulated.
+	 *
+	 * @param car a car built in this evaluator's world
+	 */
+	public void addCar(Car car) {
+		activeCars.add(car);
+	}
+
+	/**
+	 * Sets the recorder that cars are recorded with as they are stepped.  Only the cars the
+	 * recorder has been told to {@link TrajectoryRecorder#track(Car) track} are recorded.
+	 *
+	 * @param recorder the recorder to use, or null to stop recording
+	 */
+	public void setRecorder(TrajectoryRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Sets where the time taken by each part of a step is recorded.
+	 *
+	 * @param telemetry the telemetry to record to, or null to stop recording
+	 */
+	public void setTelemetry(Telemetry telemetry) {
+		this.telemetry = telemetry;
+	}
+
+	/**
+	 * @return the terrain the cars are simulated on
+	 */
+	public Terrain getTerrain() {
+		return terrain;
+	}
+
+	/**
+	 * @return the list of cars that are still alive
+	 */
+	public List<Car> getActiveCars() {
+		return activeCars;
+	}
+
+	/**
+	 * @return true once every car added to this evaluator has died
+	 */
+	public boolean isFinished() {
+		return activeCars.isEmpty();
+	}
+
+	/**
+	 * @return the total simulated time (in seconds) this evaluator has been running
+	 */
+	public float getSimulationTime() {
+		return simulationTime;
+	}
+
+	/**
+	 * Advances the physics simulation by exactly one step of the profile, and then
+	 * removes any cars that have stalled.  Streaming terrain is brought up to date with
+	 * the cars before stepping.
+	 */
+	public void step() {
+		long time = System.nanoTime();
+		updateTerrain();
+		time = lap(Telemetry.Phase.TERRAIN, time);
+
+		float subStep = profile.getTimeStep() / profile.getSubSteps();
+		for (int i = 0; i < profile.getSubSteps(); i++)
+			world.step(subStep, profile.getVelocityIterations(), profile.getPositionIterations());
+		simulationTime += profile.getTimeStep();
+		time = lap(Telemetry.Phase.PHYSICS, time);
+
+		if (recorder != null)
+			recorder.record();
+		findDeadCars();
+		lap(Telemetry.Phase.DEAD_CARS, time);
+	}
+
+	/**
+	 * Records the time since the start of a phase, if anything is being recorded.
+	 *
+	 * @return the time now, the start of the next phase
+	 */
+	private long lap(Telemetry.Phase phase, long start) {
+		long now = System.nanoTime();
+		if (telemetry != null)
+			telemetry.record(phase, now - start);
+		return now;
+	}
+
+	/**
+	 * Builds each of the provided definitions into this evaluator's world, simulates them until
+	 * they have all died and returns how far each one made it.  Any cars already added to the
+	 * evaluator are simulated (and removed) along with them.
+	 *
+	 * @param definitions the cars to evaluate
+	 * @return the max distance reached by each car, in the same order as the definitions
+	 */
+	public float[] evaluate(CarDefinition[] definitions) {
+		Car[] cars = new Car[definitions.length];
+		for (int i = 0; i < definitions.length; i++) {
+			// Cars that can't be built properly score nothing, without ever reaching box2d
+			if (!GenomeValidator.isValid(definitions[i]))
+				continue;
+			cars[i] = CarFactory.buildCar(definitions[i], world, false);
+			addCar(cars[i]);
+		}
+
+		float startTime = simulationTime;
+		while (!isFinished() && simulationTime - startTime < MAX_EVALUATION_TIME)
+			step();
+
+		// Anything still alive at this point has hit the time limit
+		for (Car car : activeCars)
+			removeCar(car);
+		activeCars.clear();
+
+		float[] distances = new float[cars.length];
+		for (int i = 0; i < cars.length; i++)
+			distances[i] = cars[i] != null ? cars[i].maxDistance : 0;
+		return distances;
+	}
+
+	/**
+	 * Makes sure streaming terrain covers the range between the last and the lead car.
+	 */
+	private void updateTerrain() {
+		if (!terrain.isStreaming() || activeCars.isEmpty())
+			return;
+
+		float tailX = Float.MAX_VALUE;
+		float leadX = -Float.MAX_VALUE;
+		for (int i = 0; i < activeCars.size(); i++) {
+			float x = activeCars.get(i).getChassis().getPosition().x;
+			tailX = Math.min(tailX, x);
+			leadX = Math.max(leadX, x);
+		}
+		terrain.update(tailX, leadX);
+	}
+
+	/**
+	 * Looks through the list of active cars to determine which
+	 * are still "alive."
+	 */
+	private void findDeadCars() {
+		ListIterator<Car> iter = activeCars.listIterator();
+		// Iterate through each active car and see if it has surpassed it's previous
+		// max distance.  If it hasn't in the last 5 simulated seconds, kill it :(
+		while (iter.hasNext()) {
+			Car car = iter.next();
+			float x = car.getChassis().getPosition().x;
+			if (x > car.maxDistance) {
+				car.maxDistance = x;
+				car.timeSinceProgress = 0;
+			} else {
+				car.timeSinceProgress += profile.getTimeStep();
+				if (car.timeSinceProgress > STALL_TIMEOUT) {
+					iter.remove();
+					removeCar(car);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes a dead car out of the world, finishing its recording first.
+	 */
+	private void removeCar(Car car) {
+		if (recorder != null)
+			recorder.stop(car);
+		if (telemetry != null)
+			telemetry.carEvaluated();
+		car.removeFromWorld(world);
+	}
+}
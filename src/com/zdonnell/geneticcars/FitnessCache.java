@@ -0,0 +1,181 @@
+package com.zdonnell.geneticcars;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers how far previously evaluated cars made it, so the same design is never simulated
+ * twice on the same terrain with the same physics settings.  Elite clones and children that
+ * crossover copied straight from one parent are looked up here instead of being rebuilt and
+ * simulated from scratch.<br><br>
+ *
+ * Each result is keyed by the genome's 64 bit hash (see {@link GenomeIndex}), the terrain seed
+ * and a {@link #physicsKey(PhysicsProfile, TerrainMode) physics key}.  The cache holds a bounded
+ * number of results, evicting the least recently used once full.  It is safe to use from several
+ * threads.
+ *
+ * @author Zach
+ */
+public class FitnessCache {
+
+	/**
+	 * The most results the cache holds
+	 */
+	private final int capacity;
+
+	/**
+	 * The cached results, in least to most recently used order
+	 */
+	private final LinkedHashMap<Key, Float> results;
+
+	/**
+	 * The number of lookups that did and didn't find a result
+	 */
+	private long hits = 0, misses = 0;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity the most results to hold before the least recently used are evicted
+	 */
+	public FitnessCache(final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		this.capacity = capacity;
+		results = new LinkedHashMap<Key, Float>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Float> eldest) {
+				return size() > FitnessCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Identifies the settings a car is simulated with.  Results from different keys can't be
+	 * compared, or reused for one another.
+	 *
+	 * @param profile     the physics settings
+	 * @param terrainMode how the terrain is built, which changes the shape of the ground slightly
+	 * @return the key to cache results under
+	 */
+	public static int physicsKey(PhysicsProfile profile, TerrainMode terrainMode) {
+		return 31 * profile.getKey() + terrainMode.ordinal();
+	}
+
+	/**
+	 * Looks up how far a car made it when it was last evaluated.
+	 *
+	 * @param definition  the car
+	 * @param terrainSeed the seed of the terrain it was evaluated on
+	 * @param physicsKey  identifies the settings it was evaluated with, see
+	 *                    {@link #physicsKey(PhysicsProfile, TerrainMode)}
+	 * @return the max distance the car reached, or NaN if it hasn't been evaluated
+	 */
+	public synchronized float get(CarDefinition definition, long terrainSeed, int physicsKey) {
+		Float distance = results.get(new Key(GenomeIndex.hash(definition.getGenes()), terrainSeed, physicsKey));
+		if (distance == null) {
+			misses++;
+			return Float.NaN;
+		}
+		hits++;
+		return distance;
+	}
+
+	/**
+	 * Records how far a car made it.
+	 *
+	 * @param definition  the car
+	 * @param terrainSeed the seed of the terrain it was evaluated on
+	 * @param physicsKey  identifies the settings it was evaluated with
+	 * @param distance    the max distance the car reached
+	 */
+	public synchronized void put(CarDefinition definition, long terrainSeed, int physicsKey, float distance) {
+		results.put(new Key(GenomeIndex.hash(definition.getGenes()), terrainSeed, physicsKey), distance);
+	}
+
+	/**
+	 * @return the number of results currently held
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * @return the number of lookups that found a result
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that didn't find a result
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the fraction (0 to 1) of lookups that found a result
+	 */
+	public synchronized float getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (float) hits / lookups;
+	}
+
+	/**
+	 * Copies out every result, least recently used first, for {@link Checkpoint}.
+	 *
+	 * @param keys      filled with the genome hash and terrain seed of each of the
+	 *                  {@link #size()} results
+	 * @param physics   filled with the physics key of each result
+	 * @param distances filled with each result's distance
+	 */
+	synchronized void copyTo(long[] keys, int[] physics, float[] distances) {
+		int i = 0;
+		for (Map.Entry<Key, Float> entry : results.entrySet()) {
+			keys[i * 2] = entry.getKey().genomeHash;
+			keys[i * 2 + 1] = entry.getKey().terrainSeed;
+			physics[i] = entry.getKey().physicsKey;
+			distances[i] = entry.getValue();
+			i++;
+		}
+	}
+
+	/**
+	 * Adds back results saved with {@link #copyTo(long[], int[], float[])}, in the same order so
+	 * they are evicted in the same order.
+	 */
+	synchronized void restore(long[] keys, int[] physics, float[] distances) {
+		for (int i = 0; i < distances.length; i++)
+			results.put(new Key(keys[i * 2], keys[i * 2 + 1], physics[i]), distances[i]);
+	}
+
+	/**
+	 * Identifies a single evaluation: a genome, on a terrain, with a set of physics settings.
+	 */
+	private static class Key {
+		final long genomeHash;
+		final long terrainSeed;
+		final int physicsKey;
+
+		Key(long genomeHash, long terrainSeed, int physicsKey) {
+			this.genomeHash = genomeHash;
+			this.terrainSeed = terrainSeed;
+			this.physicsKey = physicsKey;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return genomeHash == other.genomeHash && terrainSeed == other.terrainSeed && physicsKey == other.physicsKey;
+		}
+
+		@Override
+		public int hashCode() {
+			long h = genomeHash * 31 + terrainSeed;
+			return (int) (h ^ (h >>> 32)) * 31 + physicsKey;
+		}
+	}
+}
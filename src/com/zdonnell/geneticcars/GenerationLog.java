@@ -0,0 +1,370 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.Gdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only history of every car evaluated: its id, the ids of its parents, the generation it
+ * was evaluated in, how far it made it and its whole genome.  Elites are recorded again in every
+ * generation they take part in, under the same id.<br><br>
+ *
+ * The log is a file of fixed-size records written through memory-mapped regions, so any record can
+ * be found by its index alone and a {@link Reader} can scan millions of them without copying.
+ * Appending only takes a copy of the generation, the records are written on a background thread so
+ * the simulation never waits on the file.  The record count in the header is only bumped once a
+ * generation's records are completely written and forced to the file, so readers (even of a file
+ * left behind by a crash) never see a partial generation.
+ *
+ * @author Zach
+ */
+public class GenerationLog {
+
+	/**
+	 * The first bytes of every log file ("GCLG")
+	 */
+	private static final int MAGIC = 0x47434C47;
+
+	/**
+	 * Bumped whenever the layout of the file changes
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Magic, version, record size, genome length and then the record count
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+
+	/**
+	 * The position of the record count in the header
+	 */
+	private static final int COUNT_OFFSET = 16;
+
+	/**
+	 * Id, both parent ids, generation, fitness and then the genome
+	 */
+	static final int RECORD_SIZE = 8 + 8 + 8 + 4 + 4 + CarDefinition.GENOME_LENGTH * 4;
+
+	private static final int ID_OFFSET = 0;
+	private static final int PARENT_OFFSET = 8;
+	private static final int GENERATION_OFFSET = 24;
+	private static final int FITNESS_OFFSET = 28;
+	private static final int GENES_OFFSET = 32;
+
+	/**
+	 * The number of records in each mapped region of the file
+	 */
+	private static final int REGION_RECORDS = 8192;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	/**
+	 * The mapped header, for updating the record count
+	 */
+	private final MappedByteBuffer header;
+
+	/**
+	 * Writes the records, one generation at a time, off the simulation thread
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * The mapped region records are currently being written to, and its index
+	 */
+	private MappedByteBuffer region;
+	private long regionIndex = -1;
+
+	/**
+	 * The number of records written so far, only touched by the writer thread
+	 */
+	private long recordCount;
+
+	/**
+	 * Opens the log, creating it if it doesn't exist.
+	 *
+	 * @param path   the log file
+	 * @param append true to add to any records already in the file, false to discard them
+	 * @throws IOException if the file can't be opened or isn't a generation log
+	 */
+	public GenerationLog(File path, boolean append) throws IOException {
+		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
+		if (!append)
+			channel.truncate(0);
+
+		boolean existing = channel.size() >= HEADER_SIZE;
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		if (existing) {
+			checkHeader(header);
+			recordCount = header.getLong(COUNT_OFFSET);
+		} else {
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, RECORD_SIZE);
+			header.putInt(12, CarDefinition.GENOME_LENGTH);
+			header.putLong(COUNT_OFFSET, 0);
+		}
+
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "generation-log-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Records every car of the population's current generation, with the distances reported to
+	 * it.  Call this after the generation has been evaluated and before it is replaced by
+	 * {@link Population#nextGeneration()}.  This only copies the generation, it is written out
+	 * later on a background thread.
+	 *
+	 * @param population the population whose current generation has been evaluated
+	 */
+	public void append(Population population) {
+		int size = population.size();
+		final ByteBuffer records = ByteBuffer.allocate(size * RECORD_SIZE);
+		for (int i = 0; i < size; i++) {
+			records.putLong(population.getId(i));
+			records.putLong(population.getParentId(i, 0));
+			records.putLong(population.getParentId(i, 1));
+			records.putInt(population.getGeneration());
+			records.putFloat(population.getFitness(i));
+			for (float gene : population.getDefinition(i).getGenes())
+				records.putFloat(gene);
+		}
+		records.flip();
+
+		writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write(records);
+				} catch (IOException e) {
+					Gdx.app.error("GenerationLog", "Failed to write generation log", e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for every appended generation to be written, trims the file to its records and
+	 * closes it.  If the writer doesn't finish in time the file is closed untrimmed, which readers
+	 * cope with as they only go by the record count.  The log can not be used after this is
+	 * called.
+	 */
+	public void close() throws IOException {
+		writer.shutdown();
+		boolean finished = false;
+		try {
+			finished = writer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Mapping regions grows the file past the last record, but the count is only safe to read
+		// once the writer is done with it
+		if (finished)
+			channel.truncate(HEADER_SIZE + recordCount * RECORD_SIZE);
+		else
+			Gdx.app.error("GenerationLog", "Generation log writer didn't finish, leaving the file untrimmed");
+		file.close();
+	}
+
+	/**
+	 * Copies the records into the mapped regions, forces them to the file, and then publishes
+	 * them by updating the count.
+	 */
+	private void write(ByteBuffer records) throws IOException {
+		long index = recordCount;
+		while (records.hasRemaining()) {
+			long wanted = index / REGION_RECORDS;
+			if (wanted != regionIndex) {
+				if (region != null)
+					region.force();
+				region = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + wanted * REGION_RECORDS * RECORD_SIZE,
+						(long) REGION_RECORDS * RECORD_SIZE);
+				regionIndex = wanted;
+			}
+
+			int count = (int) Math.min(records.remaining() / RECORD_SIZE, REGION_RECORDS - index % REGION_RECORDS);
+			ByteBuffer slice = records.duplicate();
+			slice.limit(records.position() + count * RECORD_SIZE);
+			region.position((int) (index % REGION_RECORDS) * RECORD_SIZE);
+			region.put(slice);
+
+			records.position(slice.limit());
+			index += count;
+		}
+
+		if (region != null)
+			region.force();
+
+		recordCount = index;
+		header.putLong(COUNT_OFFSET, recordCount);
+		header.force();
+	}
+
+	/**
+	 * Makes sure a mapped header belongs to a log this version can read.
+	 */
+	private static void checkHeader(ByteBuffer header) throws IOException {
+		if (header.getInt(0) != MAGIC)
+			throw new IOException("Not a generation log");
+		if (header.getInt(4) != VERSION)
+			throw new IOException("Unsupported generation log version " + header.getInt(4));
+		if (header.getInt(8) != RECORD_SIZE || header.getInt(12) != CarDefinition.GENOME_LENGTH)
+			throw new IOException("Generation log records don't match this version's genomes");
+	}
+
+	/**
+	 * Read-only access to the records of a log, by index.  The records written up to the time
+	 * the reader is opened are mapped straight from the file, so scanning them costs no more than
+	 * reading memory.
+	 */
+	public static class Reader {
+
+		private final MappedByteBuffer[] regions;
+		private final long recordCount;
+
+		/**
+		 * Opens the log for reading.  Records written after this are not seen.
+		 *
+		 * @param path the log file
+		 * @throws IOException if the file can't be read or isn't a generation log
+		 */
+		public Reader(File path) throws IOException {
+			RandomAccessFile file = new RandomAccessFile(path, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				if (channel.size() < HEADER_SIZE)
+					throw new IOException("Not a generation log");
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+				checkHeader(header);
+				recordCount = header.getLong(COUNT_OFFSET);
+
+				// The mappings stay valid once the file is closed
+				regions = new MappedByteBuffer[(int) ((recordCount + REGION_RECORDS - 1) / REGION_RECORDS)];
+				for (int r = 0; r < regions.length; r++) {
+					long records = Math.min(REGION_RECORDS, recordCount - (long) r * REGION_RECORDS);
+					regions[r] = channel.map(FileChannel.MapMode.READ_ONLY,
+							HEADER_SIZE + (long) r * REGION_RECORDS * RECORD_SIZE, records * RECORD_SIZE);
+				}
+			} finally {
+				file.close();
+			}
+		}
+
+		/**
+		 * @return the number of records in the log
+		 */
+		public long getRecordCount() {
+			return recordCount;
+		}
+
+		public long getId(long record) {
+			return region(record).getLong(offset(record) + ID_OFFSET);
+		}
+
+		/**
+		 * @param parent 0 for the first parent, 1 for the second
+		 * @return the id of the parent, or -1 if the car wasn't bred
+		 */
+		public long getParentId(long record, int parent) {
+			return region(record).getLong(offset(record) + PARENT_OFFSET + parent * 8);
+		}
+
+		public int getGeneration(long record) {
+			return region(record).getInt(offset(record) + GENERATION_OFFSET);
+		}
+
+		public float getFitness(long record) {
+			return region(record).getFloat(offset(record) + FITNESS_OFFSET);
+		}
+
+		/**
+		 * @return the recorded car, rebuilt from its genome
+		 */
+		public CarDefinition getDefinition(long record) {
+			ByteBuffer region = region(record);
+			int offset = offset(record) + GENES_OFFSET;
+			float[] genes = new float[CarDefinition.GENOME_LENGTH];
+			for (int g = 0; g < genes.length; g++)
+				genes[g] = region.getFloat(offset + g * 4);
+			return new CarDefinition(genes);
+		}
+
+		/**
+		 * Finds the furthest distance reached in each generation, for plotting how the
+		 * evolution progressed.
+		 *
+		 * @return the best fitness of each generation, indexed by generation number
+		 */
+		public float[] getBestFitnessByGeneration() {
+			int generations = 0;
+			for (long i = 0; i < recordCount; i++)
+				generations = Math.max(generations, getGeneration(i) + 1);
+
+			float[] best = new float[generations];
+			for (long i = 0; i < recordCount; i++) {
+				int generation = getGeneration(i);
+				best[generation] = Math.max(best[generation], getFitness(i));
+			}
+			return best;
+		}
+
+		/**
+		 * Finds every recorded ancestor of a car in a single backwards pass over the log, which
+		 * works because parents are always recorded before their children.
+		 *
+		 * @param id the id of the car
+		 * @return the index of the latest record of the car and each of its ancestors, newest first
+		 */
+		public List<Long> getLineage(long id) {
+			Set<Long> wanted = new HashSet<Long>();
+			Set<Long> found = new HashSet<Long>();
+			List<Long> lineage = new ArrayList<Long>();
+			wanted.add(id);
+
+			for (long i = recordCount - 1; i >= 0 && !wanted.isEmpty(); i--) {
+				Long recordId = getId(i);
+				if (!wanted.remove(recordId) || !found.add(recordId))
+					continue;
+
+				lineage.add(i);
+				for (int parent = 0; parent < 2; parent++) {
+					long parentId = getParentId(i, parent);
+					if (parentId >= 0 && !found.contains(parentId))
+						wanted.add(parentId);
+				}
+			}
+			return lineage;
+		}
+
+		private MappedByteBuffer region(long record) {
+			if (record < 0 || record >= recordCount)
+				throw new IndexOutOfBoundsException("Record " + record + " of " + recordCount);
+			return regions[(int) (record / REGION_RECORDS)];
+		}
+
+		private static int offset(long record) {
+			return (int) (record % REGION_RECORDS) * RECORD_SIZE;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package com.zdonnell.geneticcars;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which genomes have been seen before, so breeding can tell when a child is identical
+ * to a car that has already been (or is about to be) simulated.  With a low mutation rate a good
+ * share of children come out bit for bit the same as a parent or a sibling, and simulating them
+ * again only gives the same distance.<br><br>
+ *
+ * Only a 64 bit hash of each genome is kept, in an open addressing table of longs, so a genome
+ * costs about 16 bytes and a lookup never allocates.  Two different genomes sharing a hash is
+ * possible but far too unlikely to worry about.  Once the index holds its maximum number of
+ * genomes it forgets them all and starts over, which only lets a few old duplicates slip through.
+ *
+ * @author Zach
+ */
+public class GenomeIndex {
+
+	/**
+	 * The smallest table allocated, a power of two
+	 */
+	private static final int MIN_CAPACITY = 64;
+
+	/**
+	 * Marks an empty slot, no genome hashes to this
+	 */
+	private static final long EMPTY = 0;
+
+	/**
+	 * The most genomes remembered before starting over
+	 */
+	private final int maxSize;
+
+	/**
+	 * The genome hashes, kept at most half full
+	 */
+	private long[] slots = new long[MIN_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * @param maxSize the most genomes remembered at once
+	 */
+	public GenomeIndex(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds a genome to the index, if it isn't in it already.
+	 *
+	 * @param definition the genome to add
+	 * @return true if the genome is new, false if it had been added before
+	 */
+	public boolean add(CarDefinition definition) {
+		long hash = hash(definition.getGenes());
+		int slot = find(hash);
+		if (slots[slot] == hash)
+			return false;
+
+		if (size == maxSize) {
+			clear();
+		} else if ((size + 1) * 2 > slots.length) {
+			grow();
+		} else {
+			slots[slot] = hash;
+			size++;
+			return true;
+		}
+
+		slots[find(hash)] = hash;
+		size++;
+		return true;
+	}
+
+	/**
+	 * @param definition the genome to look for
+	 * @return true if the genome has been added (since the index last started over)
+	 */
+	public boolean contains(CarDefinition definition) {
+		long hash = hash(definition.getGenes());
+		return slots[find(hash)] == hash;
+	}
+
+	/**
+	 * @return the number of genomes remembered
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Forgets every genome.
+	 */
+	public void clear() {
+		Arrays.fill(slots, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @return a copy of the table, which {@link #restore(long[])} can put back later
+	 */
+	long[] getSlots() {
+		return slots.clone();
+	}
+
+	/**
+	 * Puts back a table saved with {@link #getSlots()}, so the index remembers exactly the
+	 * genomes it remembered then, and starts over at exactly the same point.
+	 *
+	 * @param saved a table from {@link #getSlots()}
+	 * @throws IllegalArgumentException if the table couldn't have come from an index this size
+	 */
+	void restore(long[] saved) {
+		if (!isValidTable(saved, maxSize))
+			throw new IllegalArgumentException("Not a genome index table");
+
+		slots = saved.clone();
+		size = countGenomes(saved);
+	}
+
+	/**
+	 * @param saved   a table, possibly from {@link #getSlots()}
+	 * @param maxSize the most genomes the index it's restored into remembers
+	 * @return true if the table could have come from an index that size
+	 */
+	static boolean isValidTable(long[] saved, int maxSize) {
+		int count = countGenomes(saved);
+		return saved.length >= MIN_CAPACITY && Integer.bitCount(saved.length) == 1 && count * 2 <= saved.length && count <= maxSize;
+	}
+
+	/**
+	 * @return the number of genomes in a table
+	 */
+	private static int countGenomes(long[] table) {
+		int count = 0;
+		for (long hash : table) {
+			if (hash != EMPTY)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the slot holding the hash, or the empty slot it would go in
+	 */
+	private int find(long hash) {
+		int mask = slots.length - 1;
+		int slot = (int) hash & mask;
+		while (slots[slot] != EMPTY && slots[slot] != hash)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Doubles the table, putting every hash back in its new slot.
+	 */
+	private void grow() {
+		long[] old = slots;
+		slots = new long[old.length * 2];
+		for (long hash : old) {
+			if (hash != EMPTY)
+				slots[find(hash)] = hash;
+		}
+	}
+
+	/**
+	 * Hashes the genes exactly as stored, except that 0 and -0 count as the same value.
+	 *
+	 * @param genes a genome
+	 * @return a well mixed 64 bit hash, never {@link #EMPTY}
+	 */
+	static long hash(float[] genes) {
+		long h = genes.length;
+		for (float gene : genes)
+			h = (h + Float.floatToIntBits(gene + 0f)) * 0x9E3779B97F4A7C15L;
+
+		// SplitMix64's finalizer, so every bit of the hash depends on every gene
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		h = h ^ (h >>> 31);
+		return h != EMPTY ? h : 1;
+	}
+}
@@ -0,0 +1,161 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * Checks that a genome describes a car box2d can actually build, before any native code sees it.
+ * Genomes bred here always do, but genomes read back from a checkpoint or received from another
+ * process might not, and a bad one either trips a native assertion or wastes a whole evaluation
+ * on a car that can't move.  Everything is worked out from the genome alone in a few
+ * microseconds.  There is no need to instantiate this class as all methods are static.<br><br>
+ *
+ * A valid genome has:
+ * <ul>
+ * <li>only finite genes</li>
+ * <li>chassis triangles that all wind counter clockwise, with a usable area</li>
+ * <li>wheels with a positive radius and density, mounted on one of the chassis vertices</li>
+ * <li>a positive, finite mass</li>
+ * <li>nothing below the ground where the car is built</li>
+ * </ul>
+ *
+ * @author Zach
+ */
+public class GenomeValidator {
+
+	/**
+	 * The smallest area (in square meters) a chassis triangle may have.  box2d merges vertices
+	 * that are very close together, which can leave a thinner triangle with no area at all.
+	 */
+	private static final float MIN_TRIANGLE_AREA = 0.001f;
+
+	/**
+	 * The smallest radius (in meters) a wheel may have
+	 */
+	private static final float MIN_WHEEL_RADIUS = 0.01f;
+
+	/**
+	 * @param definition the genome to check
+	 * @return true if the car can be built and simulated
+	 */
+	public static boolean isValid(CarDefinition definition) {
+		float[] genes = definition.getGenes();
+		for (float gene : genes) {
+			if (Float.isNaN(gene) || Float.isInfinite(gene))
+				return false;
+		}
+
+		// Each chassis piece is the triangle between two neighbouring vertices and the center,
+		// its cross product is twice its area and positive when wound counter clockwise
+		float lowest = 0;
+		for (int v1 = 0; v1 < CarDefinition.CHASSIS_VERTICES; v1++) {
+			int v2 = (v1 + 1) % CarDefinition.CHASSIS_VERTICES;
+			float cross = definition.getVertexX(v1) * definition.getVertexY(v2) - definition.getVertexX(v2) * definition.getVertexY(v1);
+			if (cross < MIN_TRIANGLE_AREA * 2)
+				return false;
+			lowest = Math.min(lowest, definition.getVertexY(v1));
+		}
+
+		for (int wheel = 0; wheel < CarDefinition.WHEEL_COUNT; wheel++) {
+			float radius = definition.getWheelRadius(wheel);
+			float vertexGene = genes[CarDefinition.WHEEL_OFFSET + wheel * Wheel.ATTRIBUTE_COUNT + 2];
+			if (radius < MIN_WHEEL_RADIUS || definition.getWheelDensity(wheel) <= 0
+					|| vertexGene < 0 || vertexGene >= CarDefinition.CHASSIS_VERTICES)
+				return false;
+			lowest = Math.min(lowest, definition.getVertexY(definition.getWheelVertex(wheel)) - radius);
+		}
+
+		float mass = estimateMass(definition);
+		if (mass <= 0 || Float.isInfinite(mass))
+			return false;
+
+		return CarFactory.SPAWN_Y + lowest > TerrainGenerator.START_Y;
+	}
+
+	/**
+	 * Works out roughly how heavy the car will be, the same way box2d will from its fixtures.
+	 *
+	 * @param definition the genome
+	 * @return the mass (in kilograms) of the chassis and wheels together
+	 */
+	public static float estimateMass(CarDefinition definition) {
+		float area = 0;
+		for (int v1 = 0; v1 < CarDefinition.CHASSIS_VERTICES; v1++) {
+			int v2 = (v1 + 1) % CarDefinition.CHASSIS_VERTICES;
+			area += (definition.getVertexX(v1) * definition.getVertexY(v2) - definition.getVertexX(v2) * definition.getVertexY(v1)) / 2;
+		}
+
+		float mass = area * CarFactory.CHASSIS_DENSITY;
+		for (int wheel = 0; wheel < CarDefinition.WHEEL_COUNT; wheel++) {
+			float radius = definition.getWheelRadius(wheel);
+			mass += (float) Math.PI * radius * radius * definition.getWheelDensity(wheel);
+		}
+		return mass;
+	}
+
+	/**
+	 * Pulls every gene back into the range a randomly created car would have, which always
+	 * makes the genome valid.  Genes already in range are left alone, and a gene that isn't a
+	 * number at all is set to the smallest value in its range.
+	 *
+	 * @param definition the genome to repair, changed in place
+	 * @return true if anything had to be changed
+	 */
+	public static boolean repair(CarDefinition definition) {
+		float[] genes = definition.getGenes();
+		boolean changed = false;
+
+		// Chassis vertices must point in their vertex's direction, within the usual lengths
+		for (int v = 0; v < CarDefinition.CHASSIS_VERTICES; v++) {
+			changed |= repairAxis(genes, v * 2, CarDefinition.X_DIRECTION[v]);
+			changed |= repairAxis(genes, v * 2 + 1, CarDefinition.Y_DIRECTION[v]);
+		}
+
+		for (int wheel = 0; wheel < CarDefinition.WHEEL_COUNT; wheel++) {
+			int offset = CarDefinition.WHEEL_OFFSET + wheel * Wheel.ATTRIBUTE_COUNT;
+			changed |= clamp(genes, offset, Wheel.WHEEL_MIN_DENSITY, Wheel.WHEEL_MIN_DENSITY + Wheel.WHEEL_MAX_DENSITY);
+			changed |= clamp(genes, offset + 1, Wheel.WHEEL_MIN_RADIUS, Wheel.WHEEL_MIN_RADIUS + Wheel.WHEEL_MAX_RADIUS);
+
+			float vertex = genes[offset + 2];
+			float repaired = Float.isNaN(vertex) || Float.isInfinite(vertex) ? 0
+					: (float) (((int) Math.floor(vertex) % CarDefinition.CHASSIS_VERTICES + CarDefinition.CHASSIS_VERTICES) % CarDefinition.CHASSIS_VERTICES);
+			if (repaired != vertex) {
+				genes[offset + 2] = repaired;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Repairs one coordinate of a chassis vertex.
+	 *
+	 * @param direction which way the coordinate should point, 0 if it should be 0
+	 */
+	private static boolean repairAxis(float[] genes, int gene, int direction) {
+		if (direction == 0) {
+			if (genes[gene] == 0)
+				return false;
+			genes[gene] = 0;
+			return true;
+		}
+
+		float value = genes[gene];
+		float length = Float.isNaN(value) ? CarDefinition.CHASSIS_MIN_AXIS : Math.abs(value);
+		length = Math.max(CarDefinition.CHASSIS_MIN_AXIS, Math.min(CarDefinition.CHASSIS_MIN_AXIS + CarDefinition.CHASSIS_MAX_AXIS, length));
+		float repaired = direction * length;
+		if (repaired == value)
+			return false;
+		genes[gene] = repaired;
+		return true;
+	}
+
+	/**
+	 * Clamps a gene into a range, treating a gene that isn't a number as the minimum.
+	 */
+	private static boolean clamp(float[] genes, int gene, float min, float max) {
+		float value = genes[gene];
+		float repaired = Float.isNaN(value) ? min : Math.max(min, Math.min(max, value));
+		if (repaired == value)
+			return false;
+		genes[gene] = repaired;
+		return true;
+	}
+}
@@ -0,0 +1,267 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * Draws the text over the simulation: the leaderboard of cars still driving, the generation and
+ * max distance, and any extra lines such as the telemetry overlay.<br><br>
+ *
+ * Nothing here allocates once it is running.  Numbers are formatted by hand into reusable
+ * builders, and each line is only rebuilt when what it shows has changed, so drawing the HUD
+ * doesn't feed the garbage collector every frame.
+ *
+ * @author Zach
+ */
+public class Hud {
+
+	/**
+	 * The most cars listed on the leaderboard, the furthest along are shown
+	 */
+	private static final int MAX_LISTED = 10;
+
+	/**
+	 * The height (in pixels) of each line of text
+	 */
+	static final int LINE_HEIGHT = 27;
+
+	/**
+	 * The font class used to draw text to the screen
+	 */
+	private final BitmapFont font;
+
+	/**
+	 * SpriteBatch used with {@link #font} to render text
+	 */
+	private final SpriteBatch spriteBatch;
+
+	private final int screenWidth;
+	private final int screenHeight;
+
+	/**
+	 * The cars (by their place in the snapshot) on the leaderboard this frame, furthest along first
+	 */
+	private final int[] listed = new int[MAX_LISTED];
+
+	/**
+	 * The text of each leaderboard line, and the car index, position (in hundredths) and elite
+	 * status it was last built for
+	 */
+	private final StringBuilder[] carLines = new StringBuilder[MAX_LISTED];
+	private final int[] lineCar = new int[MAX_LISTED];
+	private final int[] linePosition = new int[MAX_LISTED];
+	private final boolean[] lineElite = new boolean[MAX_LISTED];
+
+	/**
+	 * The generation info lines, and the generation they were last built for
+	 */
+	private final StringBuilder generationLine = new StringBuilder(32);
+	private final StringBuilder maxDistanceLine = new StringBuilder(48);
+	private int shownGeneration = -1;
+
+	/**
+	 * The speed line, and the warp and speed (in hundredths) it was last built for
+	 */
+	private final StringBuilder speedLine = new StringBuilder(32);
+	private TimeWarp shownWarp;
+	private int shownSpeed = -1;
+
+	/**
+	 * The replay info line, and the recording it was last built for
+	 */
+	private final StringBuilder replayLine = new StringBuilder(32);
+	private Trajectory shownReplay;
+
+	/**
+	 * @param font         the font to draw with
+	 * @param screenWidth  the width of the screen in pixels
+	 * @param screenHeight the height of the screen in pixels
+	 */
+	public Hud(BitmapFont font, int screenWidth, int screenHeight) {
+		this.font = font;
+		this.screenWidth = screenWidth;
+		this.screenHeight = screenHeight;
+		spriteBatch = new SpriteBatch();
+
+		for (int i = 0; i < MAX_LISTED; i++) {
+			carLines[i] = new StringBuilder(32);
+			lineCar[i] = -1;
+		}
+	}
+
+	public void begin() {
+		spriteBatch.begin();
+	}
+
+	public void end() {
+		spriteBatch.end();
+	}
+
+	/**
+	 * Lists the cars furthest along, one per line from the top left of the screen.
+	 *
+	 * @param snapshot the cars still driving
+	 */
+	public void drawCarList(RenderSnapshot snapshot) {
+		int count = selectLeaders(snapshot);
+		for (int i = 0; i < count; i++) {
+			int car = listed[i];
+			int index = snapshot.getIndex(car);
+			boolean elite = snapshot.isElite(car);
+			int position = Math.round(snapshot.getX(car) * 100);
+
+			StringBuilder line = carLines[i];
+			if (lineCar[i] != index || linePosition[i] != position || lineElite[i] != elite) {
+				line.setLength(0);
+				line.append("Car# ");
+				appendInt(line, index);
+				line.append(": ");
+				appendHundredths(line, position);
+				if (elite)
+					line.append('*');
+
+				lineCar[i] = index;
+				linePosition[i] = position;
+				lineElite[i] = elite;
+			}
+			font.draw(spriteBatch, line, 10, screenHeight - 10 - LINE_HEIGHT * i);
+		}
+	}
+
+	/**
+	 * Shows the current generation, and the max distance once there is one, in the bottom left.
+	 *
+	 * @param snapshot the latest state of the evolution
+	 */
+	public void drawGenerationInfo(RenderSnapshot snapshot) {
+		if (snapshot.getGeneration() != shownGeneration) {
+			shownGeneration = snapshot.getGeneration();
+
+			generationLine.setLength(0);
+			generationLine.append("Generation: ");
+			appendInt(generationLine, shownGeneration);
+
+			maxDistanceLine.setLength(0);
+			maxDistanceLine.append("Max Distance: ");
+			appendHundredths(maxDistanceLine, Math.round(snapshot.getMaxDistance() * 100));
+			maxDistanceLine.append("(gen ");
+			appendInt(maxDistanceLine, snapshot.getMaxDistanceGeneration());
+			maxDistanceLine.append(')');
+		}
+
+		font.draw(spriteBatch, generationLine, 10, 64);
+		if (shownGeneration != 0)
+			font.draw(spriteBatch, maxDistanceLine, 10, 37);
+	}
+
+	/**
+	 * Shows the chosen time warp and the speed actually being achieved, above the generation info.
+	 *
+	 * @param warp     the chosen time warp
+	 * @param achieved the simulated seconds passing per wall clock second
+	 */
+	public void drawSpeed(TimeWarp warp, float achieved) {
+		int speed = Math.round(achieved * 100);
+		if (warp != shownWarp || speed != shownSpeed) {
+			shownWarp = warp;
+			shownSpeed = speed;
+
+			speedLine.setLength(0);
+			speedLine.append("Speed: ");
+			speedLine.append(warp.getLabel());
+			speedLine.append(" (");
+			appendHundredths(speedLine, speed);
+			speedLine.append("x)");
+		}
+		font.draw(spriteBatch, speedLine, 10, 91);
+	}
+
+	/**
+	 * Shows how far the car being replayed made it, in the bottom left.
+	 *
+	 * @param replay the recording being replayed
+	 */
+	public void drawReplayInfo(Trajectory replay) {
+		if (replay != shownReplay) {
+			shownReplay = replay;
+			replayLine.setLength(0);
+			replayLine.append("Replay: ");
+			appendHundredths(replayLine, Math.round(replay.getDistance() * 100));
+			if (replay.isElite())
+				replayLine.append('*');
+		}
+		font.draw(spriteBatch, replayLine, 10, 37);
+	}
+
+	/**
+	 * Draws lines of text down the right half of the screen.
+	 *
+	 * @param lines the lines to draw
+	 */
+	public void drawLines(CharSequence[] lines) {
+		for (int i = 0; i < lines.length; i++)
+			font.draw(spriteBatch, lines[i], screenWidth / 2, screenHeight - 10 - LINE_HEIGHT * i);
+	}
+
+	/**
+	 * Frees the font and the batch used to draw it.
+	 */
+	public void dispose() {
+		spriteBatch.dispose();
+		font.dispose();
+	}
+
+	/**
+	 * Fills {@link #listed} with the cars furthest along, furthest first, by insertion into the
+	 * short list.  Large populations only cost a comparison per car.
+	 *
+	 * @return the number of cars listed
+	 */
+	private int selectLeaders(RenderSnapshot snapshot) {
+		int count = 0;
+		for (int car = 0; car < snapshot.getCarCount(); car++) {
+			float x = snapshot.getX(car);
+			if (count == MAX_LISTED && x <= snapshot.getX(listed[count - 1]))
+				continue;
+
+			int i = count < MAX_LISTED ? count++ : count - 1;
+			while (i > 0 && snapshot.getX(listed[i - 1]) < x) {
+				listed[i] = listed[i - 1];
+				i--;
+			}
+			listed[i] = car;
+		}
+		return count;
+	}
+
+	/**
+	 * Appends an integer, without going through a String.
+	 */
+	static void appendInt(StringBuilder out, long value) {
+		if (value < 0) {
+			out.append('-');
+			value = -value;
+		}
+
+		long divisor = 1;
+		while (value / divisor >= 10)
+			divisor *= 10;
+		for (; divisor > 0; divisor /= 10)
+			out.append((char) ('0' + value / divisor % 10));
+	}
+
+	/**
+	 * Appends a value stored in hundredths with two decimal places, the same as
+	 * <code>String.format("%4.2f")</code> would.
+	 */
+	static void appendHundredths(StringBuilder out, int hundredths) {
+		if (hundredths < 0) {
+			out.append('-');
+			hundredths = -hundredths;
+		}
+		appendInt(out, hundredths / 100);
+		out.append('.');
+		out.append((char) ('0' + hundredths / 10 % 10));
+		out.append((char) ('0' + hundredths % 10));
+	}
+}
@@ -0,0 +1,213 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Evolves several independent populations ("islands") at once, each on its own thread with its
+ * own box2d {@link World}, terrain and {@link Population}.  Every few generations each island
+ * sends copies of its best cars to the next island around the ring, which swaps them in for its
+ * worst cars.  The islands otherwise never wait on each other, so this scales with the number of
+ * cores, and the occasional migration keeps the islands from all converging on the same design.<br><br>
+ *
+ * Migrants are handed over through one mailbox per island.  Publishing replaces whatever the
+ * receiver hasn't picked up yet, so a slow island only ever sees the freshest migrants and neither
+ * side ever blocks.
+ *
+ * @author Zach
+ */
+public class IslandModel {
+
+	/**
+	 * The islands, one per thread
+	 */
+	private final Island[] islands;
+
+	/**
+	 * Migrants waiting to be picked up, indexed by the receiving island
+	 */
+	private final AtomicReferenceArray<Migration> mailboxes;
+
+	/**
+	 * The number of generations between each migration
+	 */
+	private final int migrationInterval;
+
+	/**
+	 * The number of cars sent in each migration
+	 */
+	private final int migrantCount;
+
+	/**
+	 * The threads running the islands, while started
+	 */
+	private Thread[] threads;
+
+	/**
+	 * Set to false to make the islands stop after their current generation
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * Creates the islands, each with an entirely new/random population.  Every island evolves on
+	 * the same terrain, so the distances of migrants can be compared directly with the locals'.
+	 *
+	 * @param islandCount       the number of islands (and threads)
+	 * @param populationSize    the number of cars in each island's generations
+	 * @param migrationInterval the number of generations between each migration
+	 * @param migrantCount      the number of cars sent in each migration, fewer than the
+	 *                          population size so every island keeps some of its own cars
+	 * @param terrainSeed       the seed of the terrain every island evolves on
+	 * @param seed              the master seed, each island breeds with its own random numbers
+	 *                          split from it
+	 * @param profile           the physics settings every island simulates with
+	 * @param terrainMode       how every island's terrain is built
+	 */
+	public IslandModel(int islandCount, int populationSize, int migrationInterval, int migrantCount,
+			long terrainSeed, long seed, PhysicsProfile profile, TerrainMode terrainMode) {
+		if (islandCount < 1)
+			throw new IllegalArgumentException("There must be at least one island");
+		if (migrationInterval < 1)
+			throw new IllegalArgumentException("migrationInterval must be at least 1, was " + migrationInterval);
+		if (migrantCount < 0 || migrantCount >= populationSize)
+			throw new IllegalArgumentException("migrantCount must be between 0 and " + (populationSize - 1) + ", was " + migrantCount);
+		this.migrationInterval = migrationInterval;
+		this.migrantCount = migrantCount;
+
+		mailboxes = new AtomicReferenceArray<Migration>(islandCount);
+		islands = new Island[islandCount];
+		Rng master = new Rng(seed);
+		for (int i = 0; i < islandCount; i++)
+			islands[i] = new Island(i, new Population(populationSize, master.split()), terrainSeed, profile, terrainMode);
+	}
+
+	/**
+	 * Starts every island evolving on its own thread.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+
+		running = true;
+		threads = new Thread[islands.length];
+		for (int i = 0; i < islands.length; i++) {
+			threads[i] = new Thread(islands[i], "island-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * Stops every island once it finishes its current generation, and waits for them to do so.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		running = false;
+		if (threads == null)
+			return;
+
+		for (Thread thread : threads)
+			thread.join();
+		threads = null;
+	}
+
+	/**
+	 * @return the number of islands
+	 */
+	public int getIslandCount() {
+		return islands.length;
+	}
+
+	/**
+	 * @param island the index of the island
+	 * @return the number of generations the island has finished
+	 */
+	public int getGeneration(int island) {
+		return islands[island].generation;
+	}
+
+	/**
+	 * @return the max distance any car on any island has traveled
+	 */
+	public float getMaxDistance() {
+		float max = 0;
+		for (Island island : islands)
+			max = Math.max(max, island.maxDistance);
+		return max;
+	}
+
+	/**
+	 * The cars sent from one island to another, with how far each made it
+	 */
+	private static class Migration {
+		final CarDefinition[] definitions;
+		final float[] fitness;
+
+		Migration(CarDefinition[] definitions, float[] fitness) {
+			this.definitions = definitions;
+			this.fitness = fitness;
+		}
+	}
+
+	/**
+	 * A single island: a population evolving in its own world.
+	 */
+	private class Island implements Runnable {
+
+		private final int index;
+		private final Population population;
+		private final long terrainSeed;
+		private final PhysicsProfile profile;
+		private final TerrainMode terrainMode;
+
+		/**
+		 * Progress published for other threads to read
+		 */
+		volatile int generation = 0;
+		volatile float maxDistance = 0;
+
+		Island(int index, Population population, long terrainSeed, PhysicsProfile profile, TerrainMode terrainMode) {
+			this.index = index;
+			this.population = population;
+			this.terrainSeed = terrainSeed;
+			this.profile = profile;
+			this.terrainMode = terrainMode;
+		}
+
+		@Override
+		public void run() {
+			World world = new World(new Vector2(0, Evaluator.GRAVITY), true);
+			try {
+				Evaluator evaluator = new Evaluator(world, TerrainGenerator.generateStreaming(world, terrainSeed, terrainMode), profile);
+				while (running) {
+					population.setFitness(evaluator.evaluate(population.getDefinitions()));
+
+					if (population.getGeneration() % migrationInterval == migrationInterval - 1)
+						migrate();
+
+					population.nextGeneration();
+					generation = population.getGeneration();
+					maxDistance = population.getMaxDistance();
+				}
+			} finally {
+				world.dispose();
+				CarFactory.releaseThreadResources();
+			}
+		}
+
+		/**
+		 * Sends copies of this island's best cars to the next island, and swaps in any cars
+		 * that have been sent here.
+		 */
+		private void migrate() {
+			float[] fitness = new float[migrantCount];
+			CarDefinition[] best = population.copyTop(migrantCount, fitness);
+			mailboxes.set((index + 1) % islands.length, new Migration(best, fitness));
+
+			Migration arrived = mailboxes.getAndSet(index, null);
+			if (arrived != null)
+				population.immigrate(arrived.definitions, arrived.fitness);
+		}
+	}
+}
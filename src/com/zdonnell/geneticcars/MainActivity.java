@@ -21,6 +21,11 @@ public class MainActivity extends AndroidApplication {
 	 */
 	AndroidApplicationConfiguration cfg;
 
+	/**
+	 * The simulation currently being shown
+	 */
+	private Simulation sim;
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -29,7 +34,7 @@ public class MainActivity extends AndroidApplication {
 		cfg.useAccelerometer = false;
 		cfg.useCompass = false;
 
-		final Simulation sim = new Simulation();
+		sim = new Simulation(true);
 		final View simulationView = initializeForView(sim, cfg);
 
 		setContentView(simulationView);
@@ -47,12 +52,24 @@ public class MainActivity extends AndroidApplication {
 	public boolean onOptionsItemSelected(MenuItem item) {
 		switch (item.getItemId()) {
 			case R.id.reset:
-				// On "reset" just load in a new simulation
-				final Simulation sim = new Simulation();
+				// On "reset" just load in a new simulation, discarding the checkpoint of the old one
+				sim = new Simulation(false);
 				final View simulationView = initializeForView(sim, cfg);
 				setContentView(simulationView);
 				sim.setParentView(simulationView);
 				return true;
+			case R.id.replay:
+				sim.toggleReplay();
+				return true;
+			case R.id.time_warp:
+				sim.cycleTimeWarp();
+				return true;
+			case R.id.telemetry:
+				sim.toggleTelemetry();
+				return true;
+			case R.id.dump_metrics:
+				sim.dumpTelemetry();
+				return true;
 			default:
 				return super.onOptionsItemSelected(item);
 		}
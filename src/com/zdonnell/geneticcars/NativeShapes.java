@@ -0,0 +1,73 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates and disposes the box2d shapes used to build cars and terrain, keeping count of how many
+ * are alive.  Shapes are backed by native memory that is only freed by {@link Shape#dispose()},
+ * and box2d copies a shape into each fixture created from it, so the shapes used for building are
+ * reused and disposed once they are no longer needed.  The live count should stay flat however
+ * long the simulation runs.<br><br>
+ *
+ * Bodies and joints are owned by their {@link com.badlogic.gdx.physics.box2d.World}, see
+ * {@link com.badlogic.gdx.physics.box2d.World#getBodyCount()} and
+ * {@link com.badlogic.gdx.physics.box2d.World#getJointCount()} for those.
+ *
+ * @author Zach
+ */
+public class NativeShapes {
+
+	/**
+	 * The number of shapes created but not yet disposed
+	 */
+	private static final AtomicInteger liveShapes = new AtomicInteger(0);
+
+	private NativeShapes() {
+	}
+
+	/**
+	 * @return a new polygon shape, which must be passed to {@link #dispose(Shape)} once done with
+	 */
+	static PolygonShape newPolygon() {
+		liveShapes.incrementAndGet();
+		return new PolygonShape();
+	}
+
+	/**
+	 * @return a new circle shape, which must be passed to {@link #dispose(Shape)} once done with
+	 */
+	static CircleShape newCircle() {
+		liveShapes.incrementAndGet();
+		return new CircleShape();
+	}
+
+	/**
+	 * @return a new chain shape, which must be passed to {@link #dispose(Shape)} once done with
+	 */
+	static ChainShape newChain() {
+		liveShapes.incrementAndGet();
+		return new ChainShape();
+	}
+
+	/**
+	 * Frees the native memory of a shape created by this class.
+	 *
+	 * @param shape the shape to dispose
+	 */
+	static void dispose(Shape shape) {
+		shape.dispose();
+		liveShapes.decrementAndGet();
+	}
+
+	/**
+	 * @return the number of shapes that have been created but not yet disposed
+	 */
+	public static int getLiveCount() {
+		return liveShapes.get();
+	}
+}
@@ -0,0 +1,322 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates whole generations of cars headlessly, spread across a pool of threads.  Each batch of
+ * cars is simulated in a fresh box2d {@link World} containing an identical copy of the streaming
+ * terrain (generated from the same seed), so the workers never share any physics state and a
+ * car's distance never depends on what was simulated before it, which is what lets results be
+ * {@link #setFitnessCache(FitnessCache) cached}.<br><br>
+ *
+ * Rather than splitting the population into one fixed shard per thread, the workers repeatedly
+ * claim small batches of cars until none are left.  Some cars die in seconds while others drive
+ * for minutes, so this keeps every core busy until the end of the generation.
+ *
+ * @author Zach
+ */
+public class ParallelEvaluator {
+
+	/**
+	 * The number of cars a worker claims (and simulates together in one world) at a time
+	 */
+	private static final int BATCH_SIZE = 8;
+
+	/**
+	 * The pool of threads the workers run on
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The workers, one per thread
+	 */
+	private final Worker[] workers;
+
+	/**
+	 * The seed of the terrain every car is simulated on
+	 */
+	private final long terrainSeed;
+
+	/**
+	 * The physics settings every worker simulates with
+	 */
+	private final PhysicsProfile profile;
+
+	/**
+	 * Identifies the physics settings and terrain mode in the fitness cache
+	 */
+	private final int physicsKey;
+
+	/**
+	 * Results of previous evaluations, or null to always simulate every car
+	 */
+	private volatile FitnessCache fitnessCache;
+
+	/**
+	 * Creates an evaluator using one worker per available processor and the
+	 * {@link PhysicsProfile#STANDARD standard} physics settings.
+	 *
+	 * @param terrainSeed the seed used to generate the terrain in each worker's world
+	 */
+	public ParallelEvaluator(long terrainSeed) {
+		this(terrainSeed, Runtime.getRuntime().availableProcessors(), PhysicsProfile.STANDARD);
+	}
+
+	/**
+	 * Creates an evaluator with the specified number of workers, on tile terrain.
+	 *
+	 * @param terrainSeed the seed used to generate the terrain in each worker's world
+	 * @param threadCount the number of workers (and threads) to evaluate cars with
+	 * @param profile     the physics settings to simulate with
+	 */
+	public ParallelEvaluator(long terrainSeed, int threadCount, PhysicsProfile profile) {
+		this(terrainSeed, threadCount, profile, TerrainMode.TILES);
+	}
+
+	/**
+	 * Creates an evaluator with the specified number of workers.
+	 *
+	 * @param terrainSeed the seed used to generate the terrain in each worker's world
+	 * @param threadCount the number of workers (and threads) to evaluate cars with
+	 * @param profile     the physics settings to simulate with
+	 * @param terrainMode how to build the terrain in each worker's world
+	 */
+	public ParallelEvaluator(long terrainSeed, int threadCount, PhysicsProfile profile, TerrainMode terrainMode) {
+		this.terrainSeed = terrainSeed;
+		this.profile = profile;
+		physicsKey = FitnessCache.physicsKey(profile, terrainMode);
+		executor = Executors.newFixedThreadPool(threadCount, new WorkerThreadFactory());
+
+		workers = new Worker[threadCount];
+		for (int i = 0; i < threadCount; i++)
+			workers[i] = new Worker(terrainSeed, profile, terrainMode);
+	}
+
+	/**
+	 * Sets the cache consulted before simulating any car.  Cars found in the cache aren't
+	 * built at all, and the results of every car that is simulated are added to it.  The same
+	 * cache can be shared with other evaluators, results are kept apart by terrain and physics.
+	 *
+	 * @param fitnessCache the cache to use, or null to always simulate every car
+	 */
+	public void setFitnessCache(FitnessCache fitnessCache) {
+		this.fitnessCache = fitnessCache;
+	}
+
+	/**
+	 * Evaluates every car of the population's current generation and records how far each made
+	 * it, ready for {@link Population#nextGeneration()}.
+	 *
+	 * @param population the population to evaluate
+	 */
+	public void evaluate(Population population) {
+		population.setFitness(evaluate(population.getDefinitions()));
+	}
+
+	/**
+	 * Returns how far each of the provided definitions made it.  Cars already in the
+	 * {@link #setFitnessCache(FitnessCache) fitness cache} are looked up, and every other distinct
+	 * design is simulated exactly once.  This blocks until every car has been evaluated.
+	 *
+	 * @param definitions the cars to evaluate
+	 * @return the max distance reached by each car, in the same order as the definitions
+	 */
+	public float[] evaluate(CarDefinition[] definitions) {
+		FitnessCache cache = fitnessCache;
+		if (cache == null)
+			return simulate(definitions);
+
+		float[] distances = new float[definitions.length];
+
+		// Look up each car, collecting the distinct designs that still need simulating
+		int[] pendingIndex = new int[definitions.length];
+		List<CarDefinition> pending = new ArrayList<CarDefinition>();
+		Map<Long, Integer> pendingLookup = new HashMap<Long, Integer>();
+		for (int i = 0; i < definitions.length; i++) {
+			float cached = cache.get(definitions[i], terrainSeed, physicsKey);
+			if (!Float.isNaN(cached)) {
+				distances[i] = cached;
+				pendingIndex[i] = -1;
+				continue;
+			}
+
+			Long hash = GenomeIndex.hash(definitions[i].getGenes());
+			Integer index = pendingLookup.get(hash);
+			if (index == null) {
+				index = pending.size();
+				pending.add(definitions[i]);
+				pendingLookup.put(hash, index);
+			}
+			pendingIndex[i] = index;
+		}
+
+		float[] simulated = simulate(pending.toArray(new CarDefinition[pending.size()]));
+		for (int i = 0; i < simulated.length; i++)
+			cache.put(pending.get(i), terrainSeed, physicsKey, simulated[i]);
+
+		for (int i = 0; i < definitions.length; i++) {
+			if (pendingIndex[i] >= 0)
+				distances[i] = simulated[pendingIndex[i]];
+		}
+		return distances;
+	}
+
+	/**
+	 * Simulates each of the provided definitions on the workers, and blocks until they are done.
+	 *
+	 * @param definitions the cars to simulate
+	 * @return the max distance reached by each car, in the same order as the definitions
+	 */
+	private float[] simulate(CarDefinition[] definitions) {
+		float[] distances = new float[definitions.length];
+		AtomicInteger nextIndex = new AtomicInteger(0);
+
+		List<Future<Void>> results = new ArrayList<Future<Void>>(workers.length);
+		for (Worker worker : workers)
+			results.add(executor.submit(worker.prepare(definitions, distances, nextIndex)));
+
+		try {
+			for (Future<Void> result : results)
+				result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while evaluating a generation", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to evaluate a generation", e.getCause());
+		}
+		return distances;
+	}
+
+	/**
+	 * @return the physics settings every worker simulates with
+	 */
+	public PhysicsProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Stops the worker threads.  Workers still simulating (after a failed evaluation) are
+	 * interrupted and waited for, so every world they were stepping has been freed by the time
+	 * this returns.  The evaluator can not be used after this is called.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		boolean stopped = false;
+		boolean interrupted = false;
+		while (!stopped) {
+			try {
+				stopped = executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * A single worker, which claims batches of cars from the shared work and simulates each
+	 * batch in a world of its own.
+	 */
+	private static class Worker implements Callable<Void> {
+
+		private final long terrainSeed;
+		private final PhysicsProfile profile;
+		private final TerrainMode terrainMode;
+
+		private CarDefinition[] definitions;
+		private float[] distances;
+		private AtomicInteger nextIndex;
+
+		Worker(long terrainSeed, PhysicsProfile profile, TerrainMode terrainMode) {
+			this.terrainSeed = terrainSeed;
+			this.profile = profile;
+			this.terrainMode = terrainMode;
+		}
+
+		/**
+		 * Hands the worker the work for the next generation.
+		 *
+		 * @return this worker, ready to be submitted
+		 */
+		Worker prepare(CarDefinition[] definitions, float[] distances, AtomicInteger nextIndex) {
+			this.definitions = definitions;
+			this.distances = distances;
+			this.nextIndex = nextIndex;
+			return this;
+		}
+
+		@Override
+		public Void call() {
+			// An interrupt from shutdown() stops the worker once its current batch is done
+			int start;
+			while (!Thread.currentThread().isInterrupted() && (start = nextIndex.getAndAdd(BATCH_SIZE)) < definitions.length) {
+				int end = Math.min(start + BATCH_SIZE, definitions.length);
+
+				CarDefinition[] batch = new CarDefinition[end - start];
+				System.arraycopy(definitions, start, batch, 0, batch.length);
+
+				// Each worker writes a distinct range, Future.get() publishes them to the caller
+				float[] batchDistances = simulate(batch);
+				System.arraycopy(batchDistances, 0, distances, start, batchDistances.length);
+			}
+			return null;
+		}
+
+		/**
+		 * Simulates a batch in a world built just for it, so nothing left over from earlier
+		 * batches (the order bodies were created in, contacts, terrain chunks) can change the
+		 * results.
+		 */
+		private float[] simulate(CarDefinition[] batch) {
+			World world = new World(new Vector2(0, Evaluator.GRAVITY), true);
+			try {
+				Evaluator evaluator = new Evaluator(world, TerrainGenerator.generateStreaming(world, terrainSeed, terrainMode), profile);
+				return evaluator.evaluate(batch);
+			} finally {
+				world.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Creates daemon threads for the workers, so an evaluator that was never shut down
+	 * doesn't keep the process alive.
+	 */
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Runnable worker = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runnable.run();
+					} finally {
+						// The thread is going away, free the shapes it was building cars with
+						CarFactory.releaseThreadResources();
+					}
+				}
+			};
+			Thread thread = new Thread(worker, "evaluator-" + threadCount.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * A named set of physics settings, trading accuracy of the simulation for speed.  Evolution can
+ * be run on a cheap profile, with only the best cars checked again on a precise one (see
+ * {@link ProfileValidation} for how much the profiles disagree).
+ *
+ * @author Zach
+ */
+public enum PhysicsProfile {
+
+	/**
+	 * Big steps and box2d's usual solver iterations, several times cheaper than {@link #STANDARD}
+	 */
+	FAST(1 / 30f, 8, 3, 1),
+
+	/**
+	 * The settings the simulation has always used
+	 */
+	STANDARD(1 / 60f, 20, 20, 1),
+
+	/**
+	 * Each step split into several smaller sub-steps, with even more solver iterations
+	 */
+	PRECISE(1 / 60f, 30, 30, 4);
+
+	/**
+	 * The amount of simulated time (in seconds) that passes with each step
+	 */
+	private final float timeStep;
+
+	/**
+	 * The number of velocity iterations box2d's constraint solver performs per sub-step
+	 */
+	private final int velocityIterations;
+
+	/**
+	 * The number of position iterations box2d's constraint solver performs per sub-step
+	 */
+	private final int positionIterations;
+
+	/**
+	 * The number of box2d steps each step is split into
+	 */
+	private final int subSteps;
+
+	PhysicsProfile(float timeStep, int velocityIterations, int positionIterations, int subSteps) {
+		this.timeStep = timeStep;
+		this.velocityIterations = velocityIterations;
+		this.positionIterations = positionIterations;
+		this.subSteps = subSteps;
+	}
+
+	/**
+	 * @return the amount of simulated time (in seconds) that passes with each step
+	 */
+	public float getTimeStep() {
+		return timeStep;
+	}
+
+	/**
+	 * @return the number of velocity iterations box2d's constraint solver performs per sub-step
+	 */
+	public int getVelocityIterations() {
+		return velocityIterations;
+	}
+
+	/**
+	 * @return the number of position iterations box2d's constraint solver performs per sub-step
+	 */
+	public int getPositionIterations() {
+		return positionIterations;
+	}
+
+	/**
+	 * @return the number of box2d steps each step is split into
+	 */
+	public int getSubSteps() {
+		return subSteps;
+	}
+
+	/**
+	 * Identifies the physics settings cars are evaluated with.  Results from different keys
+	 * can't be compared, or reused for one another.
+	 *
+	 * @return a hash of the gravity, stall timeout and this profile's settings
+	 */
+	public int getKey() {
+		int key = Float.floatToIntBits(Evaluator.GRAVITY);
+		key = 31 * key + Float.floatToIntBits(Evaluator.STALL_TIMEOUT);
+		key = 31 * key + Float.floatToIntBits(timeStep);
+		key = 31 * key + velocityIterations;
+		key = 31 * key + positionIterations;
+		key = 31 * key + subSteps;
+		return key;
+	}
+}
@@ -0,0 +1,402 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the live evolution on its own thread, so a heavy physics step never drops a frame and a
+ * slow frame never slows the evolution down.  The thread owns the box2d world and everything
+ * built in it; after every step it copies what is needed to draw the cars into a
+ * {@link RenderSnapshot} and publishes it for the render thread.<br><br>
+ *
+ * Snapshots are passed over with three buffers and no locks: the physics thread fills the back
+ * buffer and swaps it into the middle, and the render thread swaps the middle out whenever it holds
+ * a newer snapshot than the one being drawn.  Neither thread ever waits on the other.
+ *
+ * @author Zach
+ */
+public class PhysicsThread implements Runnable {
+
+	/**
+	 * The most steps run to catch up at once.  This keeps a stall (a garbage collection, or the
+	 * app being in the background) from snowballing into ever more physics work.
+	 */
+	private static final int MAX_CATCH_UP_STEPS = 5;
+
+	/**
+	 * How long (in nanoseconds) to wait between checks while paused
+	 */
+	private static final long PAUSED_WAIT = 10000000L;
+
+	/**
+	 * The most time (in nanoseconds) spent stepping before a snapshot is published.  Above real
+	 * time this is how often the snapshots drawn are updated.
+	 */
+	private static final long STEP_BUDGET = 12000000L;
+
+	/**
+	 * How often (in nanoseconds) a frame is drawn at {@link TimeWarp#MAX}
+	 */
+	private static final long MAX_WARP_FRAME_INTERVAL = 250000000L;
+
+	/**
+	 * How often (in nanoseconds) the achieved speed is worked out
+	 */
+	private static final long SPEED_WINDOW = 1000000000L;
+
+	/**
+	 * The physics settings the live evolution is simulated with
+	 */
+	private static final PhysicsProfile PROFILE = PhysicsProfile.STANDARD;
+
+	/**
+	 * How the terrain is built, the live evolution keeps the tiles it has always used
+	 */
+	private static final TerrainMode TERRAIN_MODE = TerrainMode.TILES;
+
+	/**
+	 * Identifies {@link #PROFILE} and {@link #TERRAIN_MODE} in the fitness cache
+	 */
+	private static final int PHYSICS_KEY = FitnessCache.physicsKey(PROFILE, TERRAIN_MODE);
+
+	private final long terrainSeed;
+	private final Population population;
+	private final File checkpointFile;
+	private final GenerationLog history;
+	private final Telemetry telemetry;
+	private final TrajectoryRecorder recorder;
+
+	/**
+	 * How far cars already simulated made it, so they aren't built again
+	 */
+	private final FitnessCache fitnessCache;
+
+	/**
+	 * The world and everything in it, only touched by the physics thread
+	 */
+	private World world;
+	private Terrain terrain;
+	private Evaluator evaluator;
+
+	/**
+	 * All the cars from the current generation DEAD OR ALIVE, indexed the same as
+	 * the definitions in {@link #population}
+	 */
+	private final List<Car> genCars = new ArrayList<Car>();
+
+	/**
+	 * The transforms each car was last published with, for interpolation
+	 */
+	private final float[] lastTransforms;
+	private final boolean[] hasLast;
+
+	/**
+	 * The snapshot being filled by the physics thread, the one waiting to be picked up, and the
+	 * one being drawn by the render thread
+	 */
+	private RenderSnapshot back = new RenderSnapshot();
+	private final AtomicReference<RenderSnapshot> middle = new AtomicReference<RenderSnapshot>(new RenderSnapshot());
+	private RenderSnapshot front = new RenderSnapshot();
+
+	private Thread thread;
+	private volatile boolean running = false;
+	private volatile boolean paused = false;
+
+	/**
+	 * The x position the terrain should be kept around while the evolution is held for a replay,
+	 * or NaN while it isn't
+	 */
+	private volatile float replayFocus = Float.NaN;
+
+	/**
+	 * How fast the evolution runs compared to real time
+	 */
+	private volatile TimeWarp timeWarp = TimeWarp.NORMAL;
+
+	/**
+	 * The simulated seconds per wall clock second over the last complete second
+	 */
+	private volatile float achievedSpeed = 0;
+
+	/**
+	 * When the last snapshot was published, and when the last frame was asked for at
+	 * {@link TimeWarp#MAX}
+	 */
+	private long lastPublish = 0;
+	private long lastFrameRequest = 0;
+
+	/**
+	 * @param population     the population to evolve
+	 * @param terrainSeed    the seed to generate the terrain from
+	 * @param checkpointFile where to checkpoint the evolution after every generation
+	 * @param history        where to log every evaluated car, or null to not log them
+	 * @param telemetry      where to record how long each step takes
+	 * @param fitnessCache   where to look up (and remember) how far each car makes it
+	 */
+	public PhysicsThread(Population population, long terrainSeed, File checkpointFile, GenerationLog history, Telemetry telemetry,
+			FitnessCache fitnessCache) {
+		this.population = population;
+		this.terrainSeed = terrainSeed;
+		this.checkpointFile = checkpointFile;
+		this.history = history;
+		this.telemetry = telemetry;
+		this.fitnessCache = fitnessCache;
+		recorder = new TrajectoryRecorder(PROFILE.getTimeStep());
+
+		lastTransforms = new float[population.size() * Trajectory.FRAME_SIZE];
+		hasLast = new boolean[population.size()];
+	}
+
+	/**
+	 * Starts the evolution on a new thread.
+	 */
+	public void start() {
+		running = true;
+		thread = new Thread(this, "physics");
+		thread.start();
+	}
+
+	/**
+	 * Stops the evolution and waits for the thread to free the world.
+	 */
+	public void stop() {
+		running = false;
+		if (thread == null)
+			return;
+
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Holds or carries on the evolution, for instance while the app is in the background.
+	 */
+	public void setPaused(boolean paused) {
+		this.paused = paused;
+	}
+
+	/**
+	 * Holds the evolution while a recording is replayed, generating terrain around the replayed
+	 * car as well.  Terrain under the held cars is kept, so they carry on where they were.
+	 *
+	 * @param x the x position of the replayed car, or NaN to carry on the evolution
+	 */
+	public void setReplayFocus(float x) {
+		replayFocus = x;
+	}
+
+	/**
+	 * Sets how fast the evolution runs.  At {@link TimeWarp#MAX} the render thread should only
+	 * draw when asked, as this asks for a frame every now and then.
+	 */
+	public void setTimeWarp(TimeWarp timeWarp) {
+		this.timeWarp = timeWarp;
+	}
+
+	/**
+	 * @return how fast the evolution runs compared to real time
+	 */
+	public TimeWarp getTimeWarp() {
+		return timeWarp;
+	}
+
+	/**
+	 * @return the simulated seconds that passed per wall clock second, over the last second
+	 */
+	public float getAchievedSpeed() {
+		return achievedSpeed;
+	}
+
+	/**
+	 * @return the recorder keeping the runs of elites and record-setters
+	 */
+	public TrajectoryRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Picks up the latest snapshot published.  Only call this from the render thread.
+	 *
+	 * @return the latest snapshot, which stays valid until the next call
+	 */
+	public RenderSnapshot acquireSnapshot() {
+		if (middle.get().fresh) {
+			front = middle.getAndSet(front);
+			front.fresh = false;
+		}
+		return front;
+	}
+
+	@Override
+	public void run() {
+		world = new World(new Vector2(0, Evaluator.GRAVITY), true);
+		try {
+			terrain = TerrainGenerator.generateStreaming(world, terrainSeed, TERRAIN_MODE);
+			evaluator = new Evaluator(world, terrain, PROFILE);
+			evaluator.setRecorder(recorder);
+			evaluator.setTelemetry(telemetry);
+			buildGeneration();
+			publish();
+
+			long stepNanos = (long) (PROFILE.getTimeStep() * 1e9);
+			long last = System.nanoTime();
+			long accumulator = 0;
+			long speedWindowStart = last;
+			int windowSteps = 0;
+			while (running) {
+				float focus = replayFocus;
+				if (paused || !Float.isNaN(focus)) {
+					if (!Float.isNaN(focus)) {
+						// Only add chunks, the paused cars still need the ground under them
+						terrain.extend(focus, focus);
+						publish();
+					}
+					LockSupport.parkNanos(PAUSED_WAIT);
+					last = System.nanoTime();
+					continue;
+				}
+
+				// Step the physics simulation forward in fixed increments, however much (warped)
+				// time has passed since the last steps, but for no longer than the budget.
+				TimeWarp warp = timeWarp;
+				long now = System.nanoTime();
+				long budgetEnd = now + STEP_BUDGET;
+				int steps = 0;
+				if (warp == TimeWarp.MAX) {
+					accumulator = 0;
+					do {
+						step();
+						steps++;
+					} while (System.nanoTime() < budgetEnd);
+				} else {
+					accumulator = Math.min(accumulator + (now - last) * warp.getFactor(), MAX_CATCH_UP_STEPS * warp.getFactor() * stepNanos);
+					while (accumulator >= stepNanos && System.nanoTime() < budgetEnd) {
+						step();
+						steps++;
+						accumulator -= stepNanos;
+					}
+				}
+				last = now;
+
+				// Only the last of the steps is drawn
+				if (steps > 0)
+					publish();
+				telemetry.sampleWorld(world);
+
+				windowSteps += steps;
+				long elapsed = System.nanoTime() - speedWindowStart;
+				if (elapsed >= SPEED_WINDOW) {
+					achievedSpeed = windowSteps * PROFILE.getTimeStep() / (elapsed / 1e9f);
+					windowSteps = 0;
+					speedWindowStart += elapsed;
+				}
+
+				if (warp == TimeWarp.MAX)
+					requestOccasionalFrame();
+				else
+					LockSupport.parkNanos((stepNanos - accumulator) / warp.getFactor());
+			}
+		} finally {
+			world.dispose();
+			CarFactory.releaseThreadResources();
+			if (history != null) {
+				try {
+					history.close();
+				} catch (IOException e) {
+					Gdx.app.error("PhysicsThread", "Failed to close history", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Advances the evolution by one step, moving on to the next generation once every car is dead.
+	 */
+	private void step() {
+		evaluator.step();
+
+		// check for when we run out of cars, so we can create the next generation
+		if (evaluator.isFinished())
+			nextGeneration();
+	}
+
+	/**
+	 * Asks the render thread to draw a frame, if it has been long enough since the last one.
+	 */
+	private void requestOccasionalFrame() {
+		long now = System.nanoTime();
+		if (now - lastFrameRequest >= MAX_WARP_FRAME_INTERVAL) {
+			lastFrameRequest = now;
+			Gdx.graphics.requestRendering();
+		}
+	}
+
+	/**
+	 * Copies the current step into the back buffer and swaps it into the middle.
+	 */
+	private void publish() {
+		long now = System.nanoTime();
+		back.capture(evaluator.getActiveCars(), lastTransforms, hasLast);
+		back.captureState(population, terrain.getChunkArray(), now, now - lastPublish);
+		lastPublish = now;
+		back.fresh = true;
+		back = middle.getAndSet(back);
+	}
+
+	/**
+	 * Reports how far each car of the generation that just finished made it, and then
+	 * populates the world with the next generation bred by {@link #population}.
+	 */
+	private void nextGeneration() {
+		for (Car car : genCars) {
+			population.setFitness(car.index, car.maxDistance);
+			fitnessCache.put(car.getCarDefinition(), terrainSeed, PHYSICS_KEY, car.maxDistance);
+		}
+		if (history != null)
+			history.append(population);
+		population.nextGeneration();
+		telemetry.recordBreeding(population);
+		Checkpoint.of(population, terrainSeed, fitnessCache).save(checkpointFile);
+
+		buildGeneration();
+	}
+
+	/**
+	 * Builds the cars of the population's current generation into the world.  Cars that can't be
+	 * built properly are left out, and keep a distance of 0.  Cars that have been simulated
+	 * before, such as the elites, are left out too, and given the distance they made it then.
+	 */
+	private void buildGeneration() {
+		genCars.clear();
+		Arrays.fill(hasLast, false);
+		for (int i = 0; i < population.size(); i++) {
+			if (!GenomeValidator.isValid(population.getDefinition(i)))
+				continue;
+			float cached = fitnessCache.get(population.getDefinition(i), terrainSeed, PHYSICS_KEY);
+			if (!Float.isNaN(cached)) {
+				population.setFitness(i, cached);
+				continue;
+			}
+			Car car = CarFactory.buildCar(population.getDefinition(i), world, population.isElite(i));
+			car.index = i;
+			evaluator.addCar(car);
+			recorder.track(car);
+			genCars.add(car);
+		}
+		telemetry.recordFitnessCache(fitnessCache);
+	}
+}
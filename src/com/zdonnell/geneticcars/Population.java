@@ -0,0 +1,600 @@
+package com.zdonnell.geneticcars;
+
+import java.util.Arrays;
+
+/**
+ * Holds the genetic state of the simulation: the definitions making up the current generation,
+ * how far each of them made it, and the best distance seen so far.  It knows nothing about box2d,
+ * so the cars of a generation can be evaluated anywhere (the live {@link Simulation}, or a
+ * {@link ParallelEvaluator}) and their distances reported back before calling
+ * {@link #nextGeneration()}.<br><br>
+ *
+ * The population size, number of elites and selection scheme are all chosen at runtime.  Only the
+ * elites are ever ranked (by partial selection rather than sorting the whole generation) and
+ * parents are picked in constant time, so breeding stays cheap even with tens of thousands of cars.<br><br>
+ *
+ * Children identical to a car seen before are bred again, so every car that isn't an elite is a
+ * design that hasn't been simulated yet.  An optional {@link SurrogateModel} can also screen out
+ * the children least likely to do well before they ever reach the physics.
+ *
+ * @author Zach
+ */
+public class Population {
+
+	/**
+	 * How many generations worth of genomes are remembered to spot duplicates
+	 */
+	private static final int REMEMBERED_GENERATIONS = 100;
+
+	/**
+	 * How many times the selection scheme is asked for a second parent different from the first,
+	 * before one is picked uniformly at random
+	 */
+	private static final int MAX_PARENT_DRAWS = 16;
+
+	/**
+	 * How many times a duplicate child is bred again before giving up and creating an entirely
+	 * random car in its place
+	 */
+	private static final int MAX_BREEDING_ATTEMPTS = 8;
+
+	/**
+	 * The definitions of the cars in the current generation
+	 */
+	private final CarDefinition[] definitions;
+
+	/**
+	 * How far each car of the current generation made it, indexed the same as {@link #definitions}
+	 */
+	private final float[] fitness;
+
+	/**
+	 * The id of each car of the current generation, indexed the same as {@link #definitions}.
+	 * Elites keep the id of the car they were copied from.
+	 */
+	private final long[] ids;
+
+	/**
+	 * The ids of the two parents of each car, or -1 for cars that weren't bred here
+	 */
+	private final long[] parentIds;
+
+	/**
+	 * The id given to the next car bred
+	 */
+	private long nextId;
+
+	/**
+	 * The number of top cars copied unchanged into each new generation
+	 */
+	private final int eliteCount;
+
+	/**
+	 * Picks the parents of each new generation
+	 */
+	private final SelectionScheme selection;
+
+	/**
+	 * The random numbers behind every choice made breeding this population.  It belongs to
+	 * whichever thread evolves the population.
+	 */
+	private final Rng rng;
+
+	/**
+	 * Every genome bred (or created) recently, to spot duplicates
+	 */
+	private final GenomeIndex genomes;
+
+	/**
+	 * The number of children thrown away for being identical to a known car
+	 */
+	private long duplicatesRejected = 0;
+
+	/**
+	 * The number of children that were replaced with a random car after every attempt at breeding
+	 * them came out a duplicate
+	 */
+	private long randomReplacements = 0;
+
+	/**
+	 * Predicts how far children will make it, or null to simulate every child bred
+	 */
+	private SurrogateModel surrogate;
+
+	/**
+	 * The number of children bred for each place in a new generation while there is a surrogate
+	 */
+	private int candidatesPerChild = 1;
+
+	/**
+	 * The number of children never simulated because the surrogate predicted a sibling would
+	 * do better
+	 */
+	private long candidatesScreenedOut = 0;
+
+	/**
+	 * Indexes into {@link #definitions}.  While breeding, the first {@link #eliteCount} are the
+	 * top cars, best first.
+	 */
+	private final int[] order;
+
+	/**
+	 * The max distance any car has traveled
+	 */
+	private float maxDistance = 0;
+
+	/**
+	 * The generation that {@link #maxDistance} was set during
+	 */
+	private int maxDistanceGeneration = 0;
+
+	/**
+	 * The current generation number
+	 */
+	private int generation = 0;
+
+	/**
+	 * Creates a population of entirely new/random cars, with a single elite and parents picked
+	 * by tournaments of two.
+	 *
+	 * @param size the number of cars in each generation
+	 * @param rng  the random numbers to create and breed the cars with
+	 */
+	public Population(int size, Rng rng) {
+		this(size, 1, new SelectionScheme.Tournament(2), rng);
+	}
+
+	/**
+	 * Creates a population of entirely new/random cars.
+	 *
+	 * @param size       the number of cars in each generation
+	 * @param eliteCount the number of top cars copied unchanged into each new generation
+	 * @param selection  picks the parents of each new generation
+	 * @param rng        the random numbers to create and breed the cars with, only used by
+	 *                   this population from now on
+	 */
+	public Population(int size, int eliteCount, SelectionScheme selection, Rng rng) {
+		if (eliteCount < 1 || eliteCount > size)
+			throw new IllegalArgumentException("eliteCount must be between 1 and the population size");
+
+		definitions = new CarDefinition[size];
+		fitness = new float[size];
+		ids = new long[size];
+		parentIds = new long[size * 2];
+		order = new int[size];
+		this.eliteCount = eliteCount;
+		this.selection = selection;
+		this.rng = rng;
+		genomes = new GenomeIndex(rememberedGenomes(size));
+
+		for (int i = 0; i < size; i++) {
+			definitions[i] = new CarDefinition(rng);
+			genomes.add(definitions[i]);
+			ids[i] = nextId++;
+		}
+		Arrays.fill(parentIds, -1);
+	}
+
+	/**
+	 * @return the number of cars in each generation
+	 */
+	public int size() {
+		return definitions.length;
+	}
+
+	/**
+	 * @return the definitions of the cars in the current generation
+	 */
+	public CarDefinition[] getDefinitions() {
+		return definitions;
+	}
+
+	/**
+	 * @param index the index of the car in the current generation
+	 * @return the definition of that car
+	 */
+	public CarDefinition getDefinition(int index) {
+		return definitions[index];
+	}
+
+	/**
+	 * Records how far a car of the current generation made it.
+	 *
+	 * @param index    the index of the car in the current generation
+	 * @param distance the max distance the car reached
+	 */
+	public void setFitness(int index, float distance) {
+		fitness[index] = distance;
+	}
+
+	/**
+	 * Records how far every car of the current generation made it.
+	 *
+	 * @param distances the max distances, indexed the same as {@link #getDefinitions()}
+	 */
+	public void setFitness(float[] distances) {
+		System.arraycopy(distances, 0, fitness, 0, fitness.length);
+	}
+
+	/**
+	 * @param index the index of the car in the current generation
+	 * @return how far the car made it, or 0 if it hasn't been reported yet
+	 */
+	public float getFitness(int index) {
+		return fitness[index];
+	}
+
+	/**
+	 * @param index the index of the car in the current generation
+	 * @return the id of the car, unique within this population
+	 */
+	public long getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * @param index  the index of the car in the current generation
+	 * @param parent 0 for the first parent, 1 for the second
+	 * @return the id of the parent, or -1 if the car wasn't bred in this population
+	 */
+	public long getParentId(int index, int parent) {
+		return parentIds[index * 2 + parent];
+	}
+
+	/**
+	 * @return the id the next car bred will be given
+	 */
+	public long getNextId() {
+		return nextId;
+	}
+
+	/**
+	 * @param index the index of the car in the current generation
+	 * @return true if the car is an elite clone of one of the previous generation's best cars
+	 */
+	public boolean isElite(int index) {
+		return index < eliteCount && generation != 0;
+	}
+
+	/**
+	 * @return the random numbers this population is bred with, for saving their state
+	 */
+	public Rng getRng() {
+		return rng;
+	}
+
+	/**
+	 * @return the number of children bred again because they were identical to a known car, each
+	 *         one a simulation saved
+	 */
+	public long getDuplicatesRejected() {
+		return duplicatesRejected;
+	}
+
+	/**
+	 * @return the number of children that couldn't be bred as a new design, and were replaced
+	 *         with an entirely random car
+	 */
+	public long getRandomReplacements() {
+		return randomReplacements;
+	}
+
+	/**
+	 * @return the number of children never simulated because the surrogate predicted a sibling
+	 *         would do better
+	 */
+	public long getCandidatesScreenedOut() {
+		return candidatesScreenedOut;
+	}
+
+	/**
+	 * Has breeding try several children for each place in the next generation, and keep only
+	 * the one the surrogate predicts will go furthest.  The surrogate learns from every
+	 * generation this population finishes, and isn't used until it has learned enough.
+	 *
+	 * @param surrogate          the model to learn and predict with, or null to stop screening
+	 * @param candidatesPerChild the number of children bred for each place
+	 */
+	public void setSurrogate(SurrogateModel surrogate, int candidatesPerChild) {
+		if (candidatesPerChild < 1)
+			throw new IllegalArgumentException("candidatesPerChild must be at least 1");
+		this.surrogate = surrogate;
+		this.candidatesPerChild = candidatesPerChild;
+	}
+
+	/**
+	 * @return the model screening children, or null if there isn't one
+	 */
+	public SurrogateModel getSurrogate() {
+		return surrogate;
+	}
+
+	/**
+	 * @return the number of children bred for each place while there is a surrogate
+	 */
+	public int getCandidatesPerChild() {
+		return candidatesPerChild;
+	}
+
+	/**
+	 * @return the number of top cars copied unchanged into each new generation
+	 */
+	public int getEliteCount() {
+		return eliteCount;
+	}
+
+	/**
+	 * @return the current generation number
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return the max distance any car has traveled
+	 */
+	public float getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 * @return the generation that {@link #getMaxDistance()} was set during
+	 */
+	public int getMaxDistanceGeneration() {
+		return maxDistanceGeneration;
+	}
+
+	/**
+	 * Replaces the current generation with a new one.  The top cars from the last
+	 * generation will be placed in this generation automatically as "elites" (at the start,
+	 * best first).<br><br>
+	 *
+	 * The remainder of the generation will be populated by "mating" the rest of the last
+	 * generation, the parents will be chosen with an emphasis on how well they performed.
+	 */
+	public void nextGeneration() {
+		// Find the top cars, without ranking the rest
+		selectTop(eliteCount);
+
+		// Update the top score if necessary
+		if (fitness[order[0]] > maxDistance) {
+			maxDistance = fitness[order[0]];
+			maxDistanceGeneration = generation;
+		}
+
+		if (surrogate != null)
+			surrogate.learn(definitions, fitness);
+
+		// make babies! The parents have to be picked before any of the old generation is replaced
+		selection.prepare(fitness);
+		CarDefinition[] children = new CarDefinition[definitions.length];
+		long[] childIds = new long[ids.length];
+		long[] childParentIds = new long[parentIds.length];
+		for (int i = 0; i < eliteCount; i++) {
+			children[i] = definitions[order[i]].copy();
+			childIds[i] = ids[order[i]];
+			childParentIds[i * 2] = parentIds[order[i] * 2];
+			childParentIds[i * 2 + 1] = parentIds[order[i] * 2 + 1];
+		}
+		for (int i = eliteCount; i < children.length; i++) {
+			childIds[i] = nextId++;
+			children[i] = breed(childParentIds, i);
+		}
+
+		System.arraycopy(children, 0, definitions, 0, definitions.length);
+		System.arraycopy(childIds, 0, ids, 0, ids.length);
+		System.arraycopy(childParentIds, 0, parentIds, 0, parentIds.length);
+		Arrays.fill(fitness, 0);
+
+		generation++;
+	}
+
+	/**
+	 * Breeds a child that isn't identical to any car seen recently, including its own siblings.
+	 * With a surrogate, several such children are bred and the one predicted to go furthest kept.
+	 *
+	 * @param childParentIds filled in with the ids of the child's parents
+	 * @param child          the index of the child in the new generation
+	 * @return the child's definition
+	 */
+	private CarDefinition breed(long[] childParentIds, int child) {
+		int candidates = surrogate != null && surrogate.isReady() ? candidatesPerChild : 1;
+		CarDefinition best = null;
+		float bestPrediction = 0;
+		int bred = 0;
+		for (int attempt = 0; attempt < MAX_BREEDING_ATTEMPTS * candidates && bred < candidates; attempt++) {
+			int p1 = selection.select(rng);
+			int p2 = selectSecondParent(p1);
+
+			CarDefinition definition = CarDefinition.geneticCrossover(definitions[p1], definitions[p2], rng);
+			definition.mutate(CarFactory.MUTATION_FACTOR, rng);
+			if (genomes.contains(definition)) {
+				duplicatesRejected++;
+				continue;
+			}
+
+			bred++;
+			float prediction = candidates > 1 ? surrogate.predict(definition) : 0;
+			if (best == null || prediction > bestPrediction) {
+				best = definition;
+				bestPrediction = prediction;
+				childParentIds[child * 2] = ids[p1];
+				childParentIds[child * 2 + 1] = ids[p2];
+			}
+		}
+
+		if (best == null) {
+			// The parents are too alike to make anything new, bring in some fresh genes instead
+			randomReplacements++;
+			best = new CarDefinition(rng);
+			childParentIds[child * 2] = -1;
+			childParentIds[child * 2 + 1] = -1;
+		} else {
+			candidatesScreenedOut += bred - 1;
+		}
+		genomes.add(best);
+		return best;
+	}
+
+	/**
+	 * Picks a second parent, different from the first whenever there is more than one car.  If
+	 * the selection scheme keeps picking the first parent (fitness proportional selection does
+	 * when only one car got anywhere) a uniformly random other car is taken instead.
+	 *
+	 * @param p1 the index of the first parent
+	 * @return the index of the second parent
+	 */
+	private int selectSecondParent(int p1) {
+		if (definitions.length == 1)
+			return p1;
+
+		for (int draw = 0; draw < MAX_PARENT_DRAWS; draw++) {
+			int p2 = selection.select(rng);
+			if (p2 != p1)
+				return p2;
+		}
+		int p2 = rng.nextInt(definitions.length - 1);
+		return p2 >= p1 ? p2 + 1 : p2;
+	}
+
+	/**
+	 * Puts the population back into a previously saved state.
+	 *
+	 * @see Checkpoint
+	 */
+	void restore(CarDefinition[] definitions, float[] fitness, long[] ids, long[] parentIds, long nextId,
+			int generation, float maxDistance, int maxDistanceGeneration, long rngState, long[] genomeSlots) {
+		System.arraycopy(definitions, 0, this.definitions, 0, this.definitions.length);
+		System.arraycopy(fitness, 0, this.fitness, 0, this.fitness.length);
+		System.arraycopy(ids, 0, this.ids, 0, this.ids.length);
+		System.arraycopy(parentIds, 0, this.parentIds, 0, this.parentIds.length);
+		this.nextId = nextId;
+		this.generation = generation;
+		this.maxDistance = maxDistance;
+		this.maxDistanceGeneration = maxDistanceGeneration;
+		rng.setState(rngState);
+		genomes.restore(genomeSlots);
+	}
+
+	/**
+	 * @param size the number of cars in each generation
+	 * @return the most genomes a population that size remembers to spot duplicates
+	 */
+	static int rememberedGenomes(int size) {
+		return Math.max(size * REMEMBERED_GENERATIONS, 1024);
+	}
+
+	/**
+	 * @return a copy of the index of genomes already bred, for {@link Checkpoint}
+	 */
+	long[] getGenomeSlots() {
+		return genomes.getSlots();
+	}
+
+	/**
+	 * Copies the top cars of the current generation, for instance to send to another population.
+	 *
+	 * @param count       the number of cars to copy, at most {@link #size()}
+	 * @param topFitness  filled with how far each of the copied cars made it
+	 * @return copies of the furthest cars, best first
+	 */
+	public CarDefinition[] copyTop(int count, float[] topFitness) {
+		if (count < 0 || count > definitions.length)
+			throw new IllegalArgumentException("Can't copy the top " + count + " cars of a population of " + definitions.length);
+		if (topFitness.length < count)
+			throw new IllegalArgumentException("topFitness has room for " + topFitness.length + " cars, " + count + " were asked for");
+		selectTop(count);
+		CarDefinition[] top = new CarDefinition[count];
+		for (int i = 0; i < count; i++) {
+			top[i] = definitions[order[i]].copy();
+			topFitness[i] = fitness[order[i]];
+		}
+		return top;
+	}
+
+	/**
+	 * Replaces the worst cars of the current generation with cars from elsewhere, which then
+	 * take part in breeding the next generation like any other car.
+	 *
+	 * @param migrants        the cars to bring in
+	 * @param migrantFitness  how far each of them made it, on the same terrain and physics settings
+	 */
+	public void immigrate(CarDefinition[] migrants, float[] migrantFitness) {
+		int count = Math.min(migrants.length, definitions.length - eliteCount);
+		partitionTop(definitions.length - count);
+		for (int i = 0; i < count; i++) {
+			int worst = order[definitions.length - 1 - i];
+			definitions[worst] = migrants[i];
+			genomes.add(migrants[i]);
+			fitness[worst] = migrantFitness[i];
+			ids[worst] = nextId++;
+			parentIds[worst * 2] = -1;
+			parentIds[worst * 2 + 1] = -1;
+		}
+	}
+
+	/**
+	 * Rearranges {@link #order} so its first k entries are the k furthest cars, best first.
+	 * Only those k are actually sorted.
+	 */
+	private void selectTop(int k) {
+		partitionTop(k);
+
+		// Insertion sort the top k, which is only ever a handful of cars
+		for (int i = 1; i < k; i++) {
+			int index = order[i];
+			int j = i - 1;
+			while (j >= 0 && fitness[order[j]] < fitness[index]) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = index;
+		}
+	}
+
+	/**
+	 * Rearranges {@link #order} so its first k entries are the k furthest cars, in no particular
+	 * order, using quickselect.
+	 */
+	private void partitionTop(int k) {
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		if (k <= 0 || k >= order.length)
+			return;
+
+		int low = 0, high = order.length - 1;
+		while (low < high) {
+			int pivot = partition(low, high, low + rng.nextInt(high - low + 1));
+			if (pivot == k - 1)
+				break;
+			else if (pivot < k - 1)
+				low = pivot + 1;
+			else
+				high = pivot - 1;
+		}
+	}
+
+	/**
+	 * Partitions {@link #order} between low and high (inclusive) around the pivot, furthest
+	 * cars first.
+	 *
+	 * @return the final position of the pivot
+	 */
+	private int partition(int low, int high, int pivotIndex) {
+		float pivot = fitness[order[pivotIndex]];
+		swap(pivotIndex, high);
+		int store = low;
+		for (int i = low; i < high; i++) {
+			if (fitness[order[i]] > pivot)
+				swap(i, store++);
+		}
+		swap(store, high);
+		return store;
+	}
+
+	private void swap(int i, int j) {
+		int temp = order[i];
+		order[i] = order[j];
+		order[j] = temp;
+	}
+}
@@ -0,0 +1,135 @@
+package com.zdonnell.geneticcars;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Measures how much the choice of {@link PhysicsProfile} changes how a fixed set of cars are
+ * ranked against each other.  Evolution only cares about the ranking, so a cheap profile whose
+ * ranking closely matches a precise one's is safe to evolve with.
+ *
+ * @author Zach
+ */
+public class ProfileValidation {
+
+	/**
+	 * The spearman rank correlation of the distances under the two profiles, 1 meaning the
+	 * cars were ranked identically
+	 */
+	public final float rankCorrelation;
+
+	/**
+	 * The fraction (0 to 1) of the top cars under the reference profile that are also among the
+	 * top cars under the other profile
+	 */
+	public final float topOverlap;
+
+	/**
+	 * The mean absolute difference (in box2d units/meters) between each car's distances
+	 */
+	public final float meanDistanceError;
+
+	private ProfileValidation(float rankCorrelation, float topOverlap, float meanDistanceError) {
+		this.rankCorrelation = rankCorrelation;
+		this.topOverlap = topOverlap;
+		this.meanDistanceError = meanDistanceError;
+	}
+
+	/**
+	 * Evaluates the same cars on the same terrain under two profiles and compares the results.
+	 *
+	 * @param definitions the cars to evaluate
+	 * @param terrainSeed the seed of the terrain to evaluate on
+	 * @param reference   the profile treated as correct, usually {@link PhysicsProfile#PRECISE}
+	 * @param candidate   the profile being checked against it
+	 * @param topCount    the number of top cars to compare for {@link #topOverlap}
+	 * @return the comparison
+	 */
+	public static ProfileValidation compare(CarDefinition[] definitions, long terrainSeed,
+			PhysicsProfile reference, PhysicsProfile candidate, int topCount) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		float[] expected = evaluate(definitions, terrainSeed, threads, reference);
+		float[] actual = evaluate(definitions, terrainSeed, threads, candidate);
+		return compare(expected, actual, topCount);
+	}
+
+	/**
+	 * Compares two sets of distances for the same cars.
+	 *
+	 * @param expected the distances under the reference profile
+	 * @param actual   the distances under the candidate profile
+	 * @param topCount the number of top cars to compare for {@link #topOverlap}
+	 * @return the comparison
+	 */
+	static ProfileValidation compare(float[] expected, float[] actual, int topCount) {
+		int n = expected.length;
+		float[] expectedRanks = ranks(expected);
+		float[] actualRanks = ranks(actual);
+
+		// Spearman's rho is the pearson correlation of the ranks
+		double meanRank = (n - 1) / 2.0;
+		double covariance = 0, expectedVariance = 0, actualVariance = 0, error = 0;
+		for (int i = 0; i < n; i++) {
+			double e = expectedRanks[i] - meanRank;
+			double a = actualRanks[i] - meanRank;
+			covariance += e * a;
+			expectedVariance += e * e;
+			actualVariance += a * a;
+			error += Math.abs(expected[i] - actual[i]);
+		}
+		double denominator = Math.sqrt(expectedVariance * actualVariance);
+		float correlation = denominator == 0 ? 1 : (float) (covariance / denominator);
+
+		// ranks() puts the furthest car at rank 0
+		topCount = Math.min(topCount, n);
+		int overlap = 0;
+		for (int i = 0; i < n; i++) {
+			if (expectedRanks[i] < topCount && actualRanks[i] < topCount)
+				overlap++;
+		}
+
+		return new ProfileValidation(correlation, topCount == 0 ? 1 : (float) overlap / topCount, n == 0 ? 0 : (float) (error / n));
+	}
+
+	private static float[] evaluate(CarDefinition[] definitions, long terrainSeed, int threads, PhysicsProfile profile) {
+		ParallelEvaluator evaluator = new ParallelEvaluator(terrainSeed, threads, profile);
+		try {
+			return evaluator.evaluate(definitions);
+		} finally {
+			evaluator.shutdown();
+		}
+	}
+
+	/**
+	 * @return the rank of each distance, furthest first, with ties sharing their average rank
+	 */
+	private static float[] ranks(final float[] distances) {
+		Integer[] order = new Integer[distances.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Float.compare(distances[i2], distances[i1]);
+			}
+		});
+
+		float[] ranks = new float[distances.length];
+		for (int start = 0; start < order.length; ) {
+			int end = start + 1;
+			while (end < order.length && distances[order[end]] == distances[order[start]])
+				end++;
+			float rank = (start + end - 1) / 2f;
+			for (int i = start; i < end; i++)
+				ranks[order[i]] = rank;
+			start = end;
+		}
+		return ranks;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("rank correlation %.3f, top overlap %.0f%%, mean distance error %.2fm",
+				rankCorrelation, topOverlap * 100, meanDistanceError);
+	}
+}
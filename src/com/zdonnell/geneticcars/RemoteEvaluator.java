@@ -0,0 +1,350 @@
+package com.zdonnell.geneticcars;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates whole generations of cars in separate {@link EvaluationWorker} processes, so the
+ * simulation is no longer limited by a single process's box2d natives and garbage collector.
+ * The workers connect over TCP, which works the same whether they run on this machine (see
+ * {@link #launchLocalWorkers(int)}) or on others.<br><br>
+ *
+ * As with {@link ParallelEvaluator} the generation is split into small batches that workers take
+ * as soon as they finish their previous one, so a worker stuck with long-lived cars doesn't hold
+ * the others up.  If a worker dies, disconnects or stops answering, the batch it was working on
+ * goes back to the front of the queue for another worker to pick up.
+ *
+ * @author Zach
+ */
+public class RemoteEvaluator {
+
+	/**
+	 * The number of cars sent to a worker at a time
+	 */
+	private static final int BATCH_SIZE = 8;
+
+	/**
+	 * How long (in milliseconds) a generation waits with no workers connected before giving up
+	 */
+	private static final long NO_WORKER_TIMEOUT = 30000;
+
+	/**
+	 * How long (in milliseconds) a worker may take over a batch before it's given up on.  Even a
+	 * batch of cars that all last {@link Evaluator#MAX_EVALUATION_TIME} takes far less than this,
+	 * so a worker still silent after it has hung or lost its connection without it being closed.
+	 */
+	private static final int WORKER_TIMEOUT = 120000;
+
+	/**
+	 * Accepts connections from the workers
+	 */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * The seed of the terrain every worker evaluates on
+	 */
+	private final long terrainSeed;
+
+	/**
+	 * The physics settings every worker simulates with
+	 */
+	private final PhysicsProfile profile;
+
+	/**
+	 * How the terrain in every worker's world is built
+	 */
+	private final TerrainMode terrainMode;
+
+	/**
+	 * Batches waiting for a worker
+	 */
+	private final BlockingDeque<Batch> pending = new LinkedBlockingDeque<Batch>();
+
+	/**
+	 * The connection to each worker
+	 */
+	private final List<Connection> connections = new ArrayList<Connection>();
+
+	/**
+	 * The worker processes started by {@link #launchLocalWorkers(int)}
+	 */
+	private final List<Process> localWorkers = new ArrayList<Process>();
+
+	/**
+	 * The number of workers currently connected
+	 */
+	private final AtomicInteger liveWorkers = new AtomicInteger(0);
+
+	private volatile boolean running = true;
+
+	/**
+	 * Starts listening for workers on the specified port.  Workers may connect (and disconnect)
+	 * at any time, including in the middle of a generation.
+	 *
+	 * @param terrainSeed the seed used to generate the terrain in each worker's world
+	 * @param profile     the physics settings to simulate with
+	 * @param terrainMode how to build the terrain in each worker's world
+	 * @param port        the port to listen on, or 0 to pick any free port
+	 * @param localOnly   true to only accept workers running on this machine
+	 */
+	public RemoteEvaluator(long terrainSeed, PhysicsProfile profile, TerrainMode terrainMode, int port, boolean localOnly) throws IOException {
+		this.terrainSeed = terrainSeed;
+		this.profile = profile;
+		this.terrainMode = terrainMode;
+		serverSocket = localOnly
+				? new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"))
+				: new ServerSocket(port);
+
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptWorkers();
+			}
+		}, "coordinator-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return the port the workers should connect to
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of workers currently connected
+	 */
+	public int getWorkerCount() {
+		return liveWorkers.get();
+	}
+
+	/**
+	 * Starts worker processes on this machine, using the same java and class path as this
+	 * process.  They are destroyed when the evaluator is {@link #shutdown() shut down}.
+	 *
+	 * @param count the number of workers to start
+	 */
+	public void launchLocalWorkers(int count) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				EvaluationWorker.class.getName(), "127.0.0.1", Integer.toString(getPort()));
+		builder.redirectErrorStream(true);
+
+		for (int i = 0; i < count; i++) {
+			Process process = builder.start();
+			drain(process.getInputStream(), "worker-output-" + i);
+			synchronized (localWorkers) {
+				localWorkers.add(process);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates every car of the population's current generation and records how far each made
+	 * it, ready for {@link Population#nextGeneration()}.
+	 *
+	 * @param population the population to evaluate
+	 */
+	public void evaluate(Population population) {
+		population.setFitness(evaluate(population.getDefinitions()));
+	}
+
+	/**
+	 * Returns how far each of the provided definitions made it.  This blocks until every car
+	 * has been evaluated.
+	 *
+	 * @param definitions the cars to evaluate
+	 * @return the max distance reached by each car, in the same order as the definitions
+	 * @throws IllegalStateException if no workers are connected for too long
+	 */
+	public float[] evaluate(CarDefinition[] definitions) {
+		float[] distances = new float[definitions.length];
+		int batchCount = (definitions.length + BATCH_SIZE - 1) / BATCH_SIZE;
+		CountDownLatch done = new CountDownLatch(batchCount);
+
+		for (int start = 0; start < definitions.length; start += BATCH_SIZE)
+			pending.add(new Batch(definitions, distances, done, start, Math.min(BATCH_SIZE, definitions.length - start)));
+
+		try {
+			long idleSince = System.currentTimeMillis();
+			while (!done.await(1, TimeUnit.SECONDS)) {
+				if (liveWorkers.get() > 0) {
+					idleSince = System.currentTimeMillis();
+				} else if (System.currentTimeMillis() - idleSince > NO_WORKER_TIMEOUT) {
+					pending.clear();
+					throw new IllegalStateException("No workers connected to evaluate the generation");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pending.clear();
+			throw new RuntimeException("Interrupted while evaluating a generation", e);
+		}
+		return distances;
+	}
+
+	/**
+	 * @return the physics settings every worker simulates with
+	 */
+	public PhysicsProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Tells every worker to exit, stops accepting new ones and destroys any local workers.  The
+	 * evaluator can not be used after this is called.
+	 */
+	public void shutdown() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Nothing more to do with it either way
+		}
+
+		synchronized (connections) {
+			for (Connection connection : connections)
+				connection.thread.interrupt();
+		}
+		synchronized (localWorkers) {
+			for (Process process : localWorkers)
+				process.destroy();
+			localWorkers.clear();
+		}
+	}
+
+	/**
+	 * Accepts workers until the evaluator is shut down, giving each its own thread.
+	 */
+	private void acceptWorkers() {
+		int workerCount = 0;
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(WORKER_TIMEOUT);
+
+				Connection connection = new Connection(socket);
+				connection.thread = new Thread(connection, "coordinator-worker-" + workerCount++);
+				connection.thread.setDaemon(true);
+				synchronized (connections) {
+					connections.add(connection);
+				}
+				connection.thread.start();
+			} catch (IOException e) {
+				// The server socket was closed by shutdown(), or a single accept failed
+			}
+		}
+	}
+
+	/**
+	 * Reads and discards the output of a worker process, so it never blocks on a full pipe.
+	 */
+	private static void drain(final InputStream output, String name) {
+		Thread drainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				byte[] buffer = new byte[1024];
+				try {
+					while (output.read(buffer) != -1) {
+						// discard
+					}
+				} catch (IOException e) {
+					// The process has gone away
+				}
+			}
+		}, name);
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * A range of a generation's cars, sent to a worker as one message
+	 */
+	private static class Batch {
+		final CarDefinition[] definitions;
+		final float[] distances;
+		final CountDownLatch done;
+		final int start;
+		final int count;
+
+		Batch(CarDefinition[] definitions, float[] distances, CountDownLatch done, int start, int count) {
+			this.definitions = definitions;
+			this.distances = distances;
+			this.done = done;
+			this.start = start;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * A connected worker.  Its thread hands the worker one batch at a time, taking the next
+	 * only once the previous one's results are in.
+	 */
+	private class Connection implements Runnable {
+
+		private final Socket socket;
+		Thread thread;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			liveWorkers.incrementAndGet();
+			Batch batch = null;
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				WorkerProtocol.writeHandshake(out, terrainSeed, profile, terrainMode);
+
+				try {
+					while (running) {
+						batch = pending.take();
+						WorkerProtocol.writeBatch(out, batch.definitions, batch.start, batch.count);
+						// Each batch writes a distinct range, the latch publishes them to the caller
+						WorkerProtocol.readResults(in, batch.distances, batch.start, batch.count);
+						batch.done.countDown();
+						batch = null;
+					}
+				} catch (InterruptedException e) {
+					// shutdown() was called
+				}
+
+				out.writeInt(WorkerProtocol.END_OF_WORK);
+				out.flush();
+			} catch (IOException e) {
+				// The worker died, disconnected or timed out, let another worker take over its batch
+				if (batch != null)
+					pending.addFirst(batch);
+			} finally {
+				liveWorkers.decrementAndGet();
+				synchronized (connections) {
+					connections.remove(this);
+				}
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Already gone
+				}
+			}
+		}
+	}
+}
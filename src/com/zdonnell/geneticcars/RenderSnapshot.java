@@ -0,0 +1,210 @@
+package com.zdonnell.geneticcars;
+
+import java.util.List;
+
+/**
+ * Everything needed to draw one step of the simulation, copied out of box2d by the
+ * {@link PhysicsThread} so the render thread never touches the world.  Each car's chassis and wheel
+ * transforms are kept for both the step the snapshot was taken at and the one published before it,
+ * so the renderer can interpolate between them for however long it has been since the snapshot was
+ * published.<br><br>
+ *
+ * Snapshots are reused from step to step and only grow when the population does, so publishing
+ * them doesn't allocate.
+ *
+ * @author Zach
+ */
+public class RenderSnapshot {
+
+	private int carCount = 0;
+	private CarDefinition[] definitions = new CarDefinition[0];
+	private int[] indices = new int[0];
+	private boolean[] elite = new boolean[0];
+	private float[] life = new float[0];
+
+	/**
+	 * The transforms of each car's bodies, {@link Trajectory#FRAME_SIZE} values per car in the same
+	 * layout as {@link Trajectory#sample(float, float[])}
+	 */
+	private float[] previous = new float[0];
+	private float[] current = new float[0];
+
+	private int generation;
+	private float maxDistance;
+	private int maxDistanceGeneration;
+	private TerrainChunk[] chunks = new TerrainChunk[0];
+
+	/**
+	 * When (by {@link System#nanoTime()}) the snapshot was published, and how long after the
+	 * previous one
+	 */
+	private long publishTime;
+	private long publishInterval;
+
+	/**
+	 * True until the render thread picks the snapshot up
+	 */
+	boolean fresh;
+
+	/**
+	 * Copies the cars out of the world.  Only called on the physics thread.
+	 *
+	 * @param cars          the cars still alive
+	 * @param lastTransforms the transforms each car (by index) was last published with, updated
+	 *                       with this step's
+	 * @param hasLast       whether each car (by index) has been published before this generation
+	 */
+	void capture(List<Car> cars, float[] lastTransforms, boolean[] hasLast) {
+		ensureCapacity(cars.size());
+		carCount = cars.size();
+
+		for (int c = 0; c < carCount; c++) {
+			Car car = cars.get(c);
+			definitions[c] = car.getCarDefinition();
+			indices[c] = car.index;
+			elite[c] = car.isElite;
+			life[c] = car.timeSinceProgress / Evaluator.STALL_TIMEOUT;
+
+			int offset = c * Trajectory.FRAME_SIZE;
+			write(current, offset, car);
+
+			int lastOffset = car.index * Trajectory.FRAME_SIZE;
+			if (!hasLast[car.index])
+				System.arraycopy(current, offset, lastTransforms, lastOffset, Trajectory.FRAME_SIZE);
+			System.arraycopy(lastTransforms, lastOffset, previous, offset, Trajectory.FRAME_SIZE);
+			System.arraycopy(current, offset, lastTransforms, lastOffset, Trajectory.FRAME_SIZE);
+			hasLast[car.index] = true;
+		}
+
+		// Cars that died don't keep their references alive
+		for (int c = carCount; c < definitions.length && definitions[c] != null; c++)
+			definitions[c] = null;
+	}
+
+	/**
+	 * Copies the generation counters and terrain.  Only called on the physics thread.
+	 */
+	void captureState(Population population, TerrainChunk[] chunks, long publishTime, long publishInterval) {
+		generation = population.getGeneration();
+		maxDistance = population.getMaxDistance();
+		maxDistanceGeneration = population.getMaxDistanceGeneration();
+		this.chunks = chunks;
+		this.publishTime = publishTime;
+		this.publishInterval = publishInterval;
+	}
+
+	/**
+	 * @return the number of cars alive at this step
+	 */
+	public int getCarCount() {
+		return carCount;
+	}
+
+	public CarDefinition getDefinition(int car) {
+		return definitions[car];
+	}
+
+	/**
+	 * @return the index of the car within its generation
+	 */
+	public int getIndex(int car) {
+		return indices[car];
+	}
+
+	public boolean isElite(int car) {
+		return elite[car];
+	}
+
+	/**
+	 * @return how close the car is to being killed for stalling, from 0 to 1
+	 */
+	public float getLife(int car) {
+		return life[car];
+	}
+
+	/**
+	 * @return the x position of the car's chassis at this step
+	 */
+	public float getX(int car) {
+		return current[car * Trajectory.FRAME_SIZE];
+	}
+
+	/**
+	 * @return the y position of the car's chassis at this step
+	 */
+	public float getY(int car) {
+		return current[car * Trajectory.FRAME_SIZE + 1];
+	}
+
+	/**
+	 * Finds the transforms of a car's bodies part way between the previous snapshot and this one.
+	 *
+	 * @param car   the car
+	 * @param alpha how far between the snapshots, from 0 (the previous) to 1 (this one)
+	 * @param out   filled in the same layout as {@link Trajectory#sample(float, float[])}
+	 */
+	public void interpolate(int car, float alpha, float[] out) {
+		int offset = car * Trajectory.FRAME_SIZE;
+		for (int i = 0; i < Trajectory.FRAME_SIZE; i++)
+			out[i] = previous[offset + i] + (current[offset + i] - previous[offset + i]) * alpha;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public float getMaxDistance() {
+		return maxDistance;
+	}
+
+	public int getMaxDistanceGeneration() {
+		return maxDistanceGeneration;
+	}
+
+	/**
+	 * @return the terrain chunks built in the world at this step
+	 */
+	public TerrainChunk[] getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return when (by {@link System#nanoTime()}) the snapshot was published
+	 */
+	public long getPublishTime() {
+		return publishTime;
+	}
+
+	/**
+	 * @return how long (in nanoseconds) after the previous snapshot this one was published
+	 */
+	public long getPublishInterval() {
+		return publishInterval;
+	}
+
+	private void ensureCapacity(int cars) {
+		if (cars <= definitions.length)
+			return;
+
+		definitions = new CarDefinition[cars];
+		indices = new int[cars];
+		elite = new boolean[cars];
+		life = new float[cars];
+		previous = new float[cars * Trajectory.FRAME_SIZE];
+		current = new float[cars * Trajectory.FRAME_SIZE];
+	}
+
+	/**
+	 * Writes the transforms of a car's bodies into the array.
+	 */
+	private static void write(float[] out, int offset, Car car) {
+		out[offset] = car.getChassis().getPosition().x;
+		out[offset + 1] = car.getChassis().getPosition().y;
+		out[offset + 2] = car.getChassis().getAngle();
+		for (int w = 0; w < car.getWheels().length; w++) {
+			out[offset + (1 + w) * 3] = car.getWheels()[w].getPosition().x;
+			out[offset + (1 + w) * 3 + 1] = car.getWheels()[w].getPosition().y;
+			out[offset + (1 + w) * 3 + 2] = car.getWheels()[w].getAngle();
+		}
+	}
+}
@@ -1,146 +1,210 @@
 package com.zdonnell.geneticcars;
 
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.physics.box2d.Fixture;
-import com.badlogic.gdx.physics.box2d.PolygonShape;
-
-import java.util.List;
 
 /**
- * This class handles the rendering of the cars and terrain using a specified ShapeRenderer
+ * This class handles the rendering of the cars and terrain using a specified ShapeBatch
  *
  * Created by zach on 7/4/13.
  */
 public class Renderer {
 
 	/**
-	 * The shape renderer that will be used to actually render the car wheels and
-	 * body segments.
+	 * The number of segments used to draw each wheel
+	 */
+	private static final int WHEEL_SEGMENTS = 30;
+
+	/**
+	 * The batch that will be used to render the car wheels, body segments and terrain.
+	 */
+	private ShapeBatch shapeBatch;
+
+	/**
+	 * The current camera matrix
+	 */
+	private Matrix4 projection;
+
+	/**
+	 * Reusable vertices for the chassis triangles
 	 */
-	private ShapeRenderer shapeRenderer;
+	private final Vector2[] v = {new Vector2(), new Vector2(), new Vector2()};
+
+	/**
+	 * Reusable buffer for the bodies of the car being drawn
+	 */
+	private final float[] carFrame = new float[Trajectory.FRAME_SIZE];
 
 	/**
 	 * Constructor
 	 *
-	 * @param shapeRenderer an instantiated {@link ShapeRenderer} to use.
+	 * @param shapeBatch an instantiated {@link ShapeBatch} to use.
 	 */
-	public Renderer(ShapeRenderer shapeRenderer) {
-		this.shapeRenderer = shapeRenderer;
+	public Renderer(ShapeBatch shapeBatch) {
+		this.shapeBatch = shapeBatch;
 	}
 
 	/**
-	 * If the camera is modified we need to let the shapeRenderer know, so the translation
+	 * If the camera is modified we need to let the shapeBatch know, so the translation
 	 * from box2d coordinates to screen coordinates remains correct.
 	 *
 	 * @param matrix
 	 */
 	public void setProjectionMatrix(Matrix4 matrix) {
-		shapeRenderer.setProjectionMatrix(matrix);
+		projection = matrix;
+	}
+
+	/**
+	 * Frees the batch used for rendering.
+	 */
+	public void dispose() {
+		shapeBatch.dispose();
 	}
 
 	/**
-	 * Draws all the cars in the List provided.
+	 * Draws every car in the snapshot, part way between the previous snapshot and this one.
+	 * Every car goes into the same batch, so the whole population is drawn with a single
+	 * submission of fills and one of outlines.
 	 *
-	 * @param cars {@link List} of cars
+	 * @param snapshot the cars to draw
+	 * @param alpha    how far between the steps to draw the cars, from 0 to 1
 	 */
-	public void renderCars(List<Car> cars) {
-		for (Car car : cars) {
-
-			// Calculate an alpha value that represents how much longer the car has before it is killed.
-			float lifeLeft = (float) (System.currentTimeMillis() - car.timeLastMoved) / 5000f;
-			float alpha = lifeLeft / 1f;
-
-			// draw wheels
-			for (Body wheel : car.getWheels()) {
-				Vector2 pos = wheel.getPosition();
-
-				// Figure out the color of the wheel based on it's density
-				float wheelDensityRange = Wheel.WHEEL_MAX_DENSITY - Wheel.WHEEL_MIN_DENSITY;
-				float densityRatio = (wheel.getMass() - Wheel.WHEEL_MIN_DENSITY) / wheelDensityRange;
-				densityRatio = 1f - densityRatio;
-
-				// Draw the solid wheel color
-				shapeRenderer.begin(ShapeRenderer.ShapeType.FilledCircle);
-				shapeRenderer.setColor(densityRatio, densityRatio, densityRatio, 1f - alpha);
-				shapeRenderer.filledCircle(pos.x, pos.y, wheel.getFixtureList().get(0).getShape().getRadius(), 30);
-				shapeRenderer.end();
-
-				// Draw the wheel outline
-				shapeRenderer.begin(ShapeRenderer.ShapeType.Circle);
-				shapeRenderer.setColor(0, 0, 0, 1f - alpha);
-				shapeRenderer.circle(pos.x, pos.y, wheel.getFixtureList().get(0).getShape().getRadius(), 30);
-				shapeRenderer.end();
-			}
+	public void renderCars(RenderSnapshot snapshot, float alpha) {
+		float[] frame = carFrame;
+		shapeBatch.begin(projection);
+		for (int c = 0; c < snapshot.getCarCount(); c++) {
+			snapshot.interpolate(c, alpha, frame);
+
+			// Fade the car out as it gets closer to being killed
+			drawCar(snapshot.getDefinition(c), snapshot.isElite(c), 1f - snapshot.getLife(c), frame);
+		}
+		shapeBatch.end();
+	}
+
+	/**
+	 * Draws a recorded car as it was at a point in its recording.  Everything comes from the
+	 * recording and the car's definition, box2d isn't touched at all.
+	 *
+	 * @param trajectory the recording to draw
+	 * @param time       the time (in simulated seconds) since the start of the recording
+	 */
+	public void renderReplay(Trajectory trajectory, float time) {
+		float[] frame = carFrame;
+		trajectory.sample(time, frame);
 
-			// Draw the chassis pieces (triangles)
-			Vector2[] v = new Vector2[3];
-			for (Fixture chassisPart : car.getChassis().getFixtureList()) {
-				PolygonShape chassisPieceShape = (PolygonShape) chassisPart.getShape();
+		shapeBatch.begin(projection);
+		drawCar(trajectory.getDefinition(), trajectory.isElite(), 1f, frame);
+		shapeBatch.end();
+	}
 
-				// Get the vertices for this chassis piece (triangle)
-				for (int i = 0; i < 3; i++) {
-					v[i] = new Vector2();
-					chassisPieceShape.getVertex(i, v[i]);
-					car.getChassis().getTransform().mul(v[i]);
-				}
+	/**
+	 * Draws a car's wheels and then its chassis.
+	 *
+	 * @param frame the x, y and angle of the chassis and then each wheel
+	 */
+	private void drawCar(CarDefinition definition, boolean isElite, float alpha, float[] frame) {
+		for (int w = 0; w < CarDefinition.WHEEL_COUNT; w++) {
+			// Figure out the color of the wheel based on it's density
+			float wheelDensityRange = Wheel.WHEEL_MAX_DENSITY - Wheel.WHEEL_MIN_DENSITY;
+			float densityRatio = 1f - (definition.getWheelDensity(w) - Wheel.WHEEL_MIN_DENSITY) / wheelDensityRange;
+			drawWheel(frame[(1 + w) * 3], frame[(1 + w) * 3 + 1], definition.getWheelRadius(w), densityRatio, alpha);
+		}
+		drawChassis(definition, isElite, alpha, frame[0], frame[1], frame[2]);
+	}
 
-				// Draw the light red solid color
-				shapeRenderer.begin(ShapeRenderer.ShapeType.FilledTriangle);
-				shapeRenderer.setColor(car.isElite ? 0.6f : 0.9f, 0.6f, car.isElite ? 0.9f : 0.6f, 1f - alpha);
-				shapeRenderer.filledTriangle(v[0].x, v[0].y, v[1].x, v[1].y, v[2].x, v[2].y);
-				shapeRenderer.end();
-
-				// Draw the darker red triangle outlines
-				shapeRenderer.begin(ShapeRenderer.ShapeType.Triangle);
-				shapeRenderer.setColor(car.isElite ? 0.1f : 0.9f, 0.1f, car.isElite ? 0.9f : 0.1f, 1f - alpha);
-				shapeRenderer.triangle(v[0].x, v[0].y, v[1].x, v[1].y, v[2].x, v[2].y);
-				shapeRenderer.end();
-			}
+	/**
+	 * Draws a solid wheel with an outline.
+	 *
+	 * @param shade how light the wheel is, from 0 (black) to 1 (white)
+	 */
+	private void drawWheel(float x, float y, float radius, float shade, float alpha) {
+		// Draw the solid wheel color
+		shapeBatch.setColor(shade, shade, shade, alpha);
+		shapeBatch.filledCircle(x, y, radius, WHEEL_SEGMENTS);
+
+		// Draw the wheel outline
+		shapeBatch.setColor(0, 0, 0, alpha);
+		shapeBatch.circle(x, y, radius, WHEEL_SEGMENTS);
+	}
+
+	/**
+	 * Draws the chassis pieces (triangles) of a car, straight from the definition rather than
+	 * reading every fixture's vertices back out of box2d.
+	 *
+	 * @param x     the x of the chassis' center
+	 * @param y     the y of the chassis' center
+	 * @param angle the rotation of the chassis (in radians)
+	 */
+	private void drawChassis(CarDefinition definition, boolean isElite, float alpha, float x, float y, float angle) {
+		float cos = (float) Math.cos(angle);
+		float sin = (float) Math.sin(angle);
+		for (int i = 0; i < CarDefinition.CHASSIS_VERTICES; i++) {
+			int next = (i + 1) % CarDefinition.CHASSIS_VERTICES;
+			transform(v[0], definition.getVertexX(i), definition.getVertexY(i), x, y, cos, sin);
+			transform(v[1], definition.getVertexX(next), definition.getVertexY(next), x, y, cos, sin);
+			v[2].set(x, y);
+
+			// Draw the light red solid color
+			shapeBatch.setColor(isElite ? 0.6f : 0.9f, 0.6f, isElite ? 0.9f : 0.6f, alpha);
+			shapeBatch.filledTriangle(v[0].x, v[0].y, v[1].x, v[1].y, v[2].x, v[2].y);
+
+			// Draw the darker red triangle outlines
+			shapeBatch.setColor(isElite ? 0.1f : 0.9f, 0.1f, isElite ? 0.9f : 0.1f, alpha);
+			shapeBatch.triangle(v[0].x, v[0].y, v[1].x, v[1].y, v[2].x, v[2].y);
 		}
 	}
 
 	/**
-	 * Uses the shape renderer to draw all tiles in the List
+	 * Rotates a point of the chassis and moves it to where the chassis is.
+	 */
+	private static void transform(Vector2 out, float localX, float localY, float x, float y, float cos, float sin) {
+		out.set(localX * cos - localY * sin + x, localX * sin + localY * cos + y);
+	}
+
+	/**
+	 * Draws the tiles of the terrain that are within view of the camera.  Chunks outside the
+	 * camera's horizontal range are skipped entirely, and within the rest only the tiles overlapping
+	 * the range are visited, using the outlines worked out when the chunk was generated.  Chains
+	 * are drawn straight from their points.
 	 *
-	 * @param tiles the {@link List} of tiles to render
+	 * @param chunks the terrain chunks to render
+	 * @param camera the camera the terrain is being viewed through
 	 */
-	public void renderTiles(List<Body> tiles) {
-		shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
-		shapeRenderer.setColor(Color.DARK_GRAY);
-
-		// Setup some reusable Vector2s
-		Vector2[] verts = new Vector2[4];
-		for (int i = 0; i < verts.length; i++)
-			verts[i] = new Vector2();
-		Vector2 lv = new Vector2();
-		Vector2 f = new Vector2();
-
-		for (Body tile : tiles) {
-			PolygonShape tileShape = (PolygonShape) tile.getFixtureList().get(0).getShape();
-
-			// Get the vertices for the shape.
-			for (int i = 0; i < verts.length; i++) {
-				tileShape.getVertex(i, verts[i]);
-				tile.getTransform().mul(verts[i]);
+	public void renderTerrain(TerrainChunk[] chunks, OrthographicCamera camera) {
+		float halfWidth = camera.viewportWidth * camera.zoom / 2;
+		float minX = camera.position.x - halfWidth;
+		float maxX = camera.position.x + halfWidth;
+		int perTile = TerrainChunk.VERTICES_PER_TILE * 2;
+
+		shapeBatch.begin(projection);
+		Color color = Color.DARK_GRAY;
+		shapeBatch.setColor(color.r, color.g, color.b, color.a);
+
+		for (int c = 0; c < chunks.length; c++) {
+			TerrainChunk chunk = chunks[c];
+			if (chunk.getMaxX() < minX || chunk.getMinX() > maxX)
+				continue;
+
+			float[] verts = chunk.getVertices();
+			int end = chunk.getEndTile(maxX);
+			if (chunk.isChain()) {
+				// Each tile of a chain is just the segment to the next point
+				for (int tile = chunk.getFirstTile(minX); tile < end; tile++)
+					shapeBatch.line(verts[tile * 2], verts[tile * 2 + 1], verts[tile * 2 + 2], verts[tile * 2 + 3]);
+				continue;
 			}
+			for (int tile = chunk.getFirstTile(minX); tile < end; tile++) {
+				int offset = tile * perTile;
 
-			// Set the starting vertices to draw the lines from
-			lv.set(verts[0]);
-			f.set(verts[0]);
-
-			// For each of the vertices draw a line connecting it to the previous
-			for (int i = 1; i < verts.length; i++) {
-				Vector2 v = verts[i];
-				shapeRenderer.line(lv.x, lv.y, v.x, v.y);
-				lv.set(v);
+				// Draw a line from each vertex to the next, wrapping back around to the first
+				for (int i = 0; i < perTile; i += 2) {
+					int next = (i + 2) % perTile;
+					shapeBatch.line(verts[offset + i], verts[offset + i + 1], verts[offset + next], verts[offset + next + 1]);
+				}
 			}
-			// Finally draw the last line, connecting back to the first vertex
-			shapeRenderer.line(f.x, f.y, lv.x, lv.y);
 		}
-		shapeRenderer.end();
+		shapeBatch.end();
 	}
 }
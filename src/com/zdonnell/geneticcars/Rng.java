@@ -0,0 +1,91 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * A small, fast, seeded random number generator (SplitMix64), used for every random choice the
+ * evolution makes: new genomes, crossover points, mutations, parent selection.  Given the same
+ * seed it produces the same numbers on every device, so a whole run can be replayed from the one
+ * seed it started with.<br><br>
+ *
+ * An Rng is not thread safe.  Instead each thread gets its own, {@link #split()} off a parent, so
+ * threads never contend over a shared generator and the numbers each one sees don't depend on how
+ * the threads happen to be scheduled.
+ *
+ * @author Zach
+ */
+public final class Rng {
+
+	/**
+	 * The golden ratio step SplitMix64 adds to its state for every number
+	 */
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long state;
+
+	/**
+	 * @param seed the seed, any value is fine
+	 */
+	public Rng(long seed) {
+		state = seed;
+	}
+
+	/**
+	 * @return a uniformly distributed long
+	 */
+	public long nextLong() {
+		long z = (state += GAMMA);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param bound the upper bound (exclusive), must be positive
+	 * @return a uniformly distributed int between 0 (inclusive) and bound (exclusive)
+	 */
+	public int nextInt(int bound) {
+		// The top 31 bits scaled into range, the bias is far too small to matter here
+		return (int) (((nextLong() >>> 33) * bound) >>> 31);
+	}
+
+	/**
+	 * @return a uniformly distributed float between 0 (inclusive) and 1 (exclusive)
+	 */
+	public float nextFloat() {
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * @return a uniformly distributed double between 0 (inclusive) and 1 (exclusive)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Creates an independent generator for another thread.  The new generator's sequence is
+	 * decided entirely by this one's state, so splitting in the same order always gives the
+	 * same streams.
+	 *
+	 * @return a new generator, seeded from this one
+	 */
+	public Rng split() {
+		return new Rng(nextLong());
+	}
+
+	/**
+	 * @return the current state, which {@link #setState(long)} can restore later
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Puts the generator back to an earlier state, so it carries on with exactly the numbers it
+	 * would have produced from there.
+	 *
+	 * @param state a value from {@link #getState()}
+	 */
+	public void setState(long state) {
+		this.state = state;
+	}
+}
@@ -0,0 +1,134 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * Decides which cars of a finished generation get to be parents.  Every scheme picks a parent in
+ * constant time, after at most linear preparation per generation, so breeding stays cheap however
+ * large the population is.
+ *
+ * @author Zach
+ */
+public abstract class SelectionScheme {
+
+	/**
+	 * Prepares to pick parents from a finished generation.
+	 *
+	 * @param fitness how far each car of the generation made it
+	 */
+	public abstract void prepare(float[] fitness);
+
+	/**
+	 * Picks a parent, with a preference for "high performing" cars.
+	 *
+	 * @param rng the random numbers to pick with
+	 * @return the index of the parent in the generation
+	 */
+	public abstract int select(Rng rng);
+
+	/**
+	 * Picks the best of a few random cars.  Larger tournaments favor the top cars more strongly.
+	 */
+	public static class Tournament extends SelectionScheme {
+
+		/**
+		 * The number of cars competing in each tournament
+		 */
+		private final int size;
+
+		private float[] fitness;
+
+		/**
+		 * @param size the number of cars competing in each tournament
+		 */
+		public Tournament(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public void prepare(float[] fitness) {
+			this.fitness = fitness;
+		}
+
+		@Override
+		public int select(Rng rng) {
+			int best = rng.nextInt(fitness.length);
+			for (int i = 1; i < size; i++) {
+				int challenger = rng.nextInt(fitness.length);
+				if (fitness[challenger] > fitness[best])
+					best = challenger;
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * Picks each car with a probability proportional to how far it made it, using Vose's alias
+	 * method: one random column of a precomputed table, then one biased coin flip.
+	 */
+	public static class FitnessProportional extends SelectionScheme {
+
+		/**
+		 * The chance of keeping each column rather than taking its alias
+		 */
+		private float[] probability = new float[0];
+
+		/**
+		 * The car each column hands over to when its coin flip fails
+		 */
+		private int[] alias = new int[0];
+
+		/**
+		 * Work lists of columns below and above the average weight
+		 */
+		private int[] small = new int[0], large = new int[0];
+
+		@Override
+		public void prepare(float[] fitness) {
+			int n = fitness.length;
+			if (probability.length != n) {
+				probability = new float[n];
+				alias = new int[n];
+				small = new int[n];
+				large = new int[n];
+			}
+
+			double total = 0;
+			for (float f : fitness)
+				total += Math.max(f, 0);
+
+			// Scale the weights so the average column holds exactly 1
+			int smallCount = 0, largeCount = 0;
+			for (int i = 0; i < n; i++) {
+				probability[i] = total > 0 ? (float) (Math.max(fitness[i], 0) * n / total) : 1f;
+				alias[i] = i;
+				if (probability[i] < 1f)
+					small[smallCount++] = i;
+				else
+					large[largeCount++] = i;
+			}
+
+			// Top up each light column with weight from a heavy one
+			while (smallCount > 0 && largeCount > 0) {
+				int light = small[--smallCount];
+				int heavy = large[--largeCount];
+				alias[light] = heavy;
+				probability[heavy] -= 1f - probability[light];
+				if (probability[heavy] < 1f)
+					small[smallCount++] = heavy;
+				else
+					large[largeCount++] = heavy;
+			}
+
+			// Whatever is left over is only off from 1 by rounding error
+			while (smallCount > 0)
+				probability[small[--smallCount]] = 1f;
+			while (largeCount > 0)
+				probability[large[--largeCount]] = 1f;
+		}
+
+		@Override
+		public int select(Rng rng) {
+			int column = rng.nextInt(probability.length);
+			return rng.nextFloat() < probability[column] ? column : alias[column];
+		}
+	}
+}
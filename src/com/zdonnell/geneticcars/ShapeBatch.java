@@ -0,0 +1,225 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.glutils.ImmediateModeRenderer;
+import com.badlogic.gdx.graphics.glutils.ImmediateModeRenderer10;
+import com.badlogic.gdx.graphics.glutils.ImmediateModeRenderer20;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+
+/**
+ * Draws filled and outlined shapes in batches.  Unlike a {@link com.badlogic.gdx.graphics.glutils.ShapeRenderer},
+ * which has to be flushed every time the shape type changes, every filled shape drawn between
+ * {@link #begin(Matrix4)} and {@link #end()} goes into a single triangle list and every outline
+ * into a single line list, each vertex carrying its own color.  Ending the batch submits the fills
+ * and then the outlines, so drawing the whole population costs two draw calls no matter how many
+ * cars there are.
+ *
+ * @author Zach
+ */
+public class ShapeBatch {
+
+	/**
+	 * The most vertices buffered per primitive type before they are flushed early
+	 */
+	private static final int MAX_VERTICES = 30000;
+
+	/**
+	 * Buffers the vertices of filled shapes, drawn as a triangle list
+	 */
+	private final ImmediateModeRenderer fillRenderer;
+
+	/**
+	 * Buffers the vertices of outlines, drawn as a line list
+	 */
+	private final ImmediateModeRenderer lineRenderer;
+
+	/**
+	 * The number of vertices currently buffered in each renderer
+	 */
+	private int fillVertices, lineVertices;
+
+	/**
+	 * The projection matrix the current batch is drawn with
+	 */
+	private Matrix4 projection;
+
+	/**
+	 * The color given to each vertex added to the batch
+	 */
+	private float r, g, b, a;
+
+	/**
+	 * The x and y offsets of each point on a circle with a radius of 1, cached for
+	 * {@link #circleSegments}
+	 */
+	private float[] unitCircle = new float[0];
+	private int circleSegments = -1;
+
+	/**
+	 * Creates a batch for whichever version of GL is in use.
+	 */
+	public ShapeBatch() {
+		if (Gdx.graphics.isGL20Available()) {
+			fillRenderer = new ImmediateModeRenderer20(MAX_VERTICES, false, true, 0);
+			lineRenderer = new ImmediateModeRenderer20(MAX_VERTICES, false, true, 0);
+		} else {
+			fillRenderer = new ImmediateModeRenderer10(MAX_VERTICES);
+			lineRenderer = new ImmediateModeRenderer10(MAX_VERTICES);
+		}
+	}
+
+	/**
+	 * Starts a new batch.
+	 *
+	 * @param projection the matrix to translate from world to screen coordinates
+	 */
+	public void begin(Matrix4 projection) {
+		this.projection = projection;
+		fillRenderer.begin(projection, GL10.GL_TRIANGLES);
+		lineRenderer.begin(projection, GL10.GL_LINES);
+		fillVertices = 0;
+		lineVertices = 0;
+	}
+
+	/**
+	 * Draws everything in the batch, fills first so the outlines end up on top.
+	 */
+	public void end() {
+		fillRenderer.end();
+		lineRenderer.end();
+	}
+
+	/**
+	 * Sets the color used by every shape drawn after this call.
+	 */
+	public void setColor(float r, float g, float b, float a) {
+		this.r = r;
+		this.g = g;
+		this.b = b;
+		this.a = a;
+	}
+
+	/**
+	 * Adds a filled triangle to the batch.
+	 */
+	public void filledTriangle(float x1, float y1, float x2, float y2, float x3, float y3) {
+		reserveFill(3);
+		fillVertex(x1, y1);
+		fillVertex(x2, y2);
+		fillVertex(x3, y3);
+	}
+
+	/**
+	 * Adds the outline of a triangle to the batch.
+	 */
+	public void triangle(float x1, float y1, float x2, float y2, float x3, float y3) {
+		reserveLines(6);
+		lineVertex(x1, y1);
+		lineVertex(x2, y2);
+		lineVertex(x2, y2);
+		lineVertex(x3, y3);
+		lineVertex(x3, y3);
+		lineVertex(x1, y1);
+	}
+
+	/**
+	 * Adds a single line to the batch.
+	 */
+	public void line(float x1, float y1, float x2, float y2) {
+		reserveLines(2);
+		lineVertex(x1, y1);
+		lineVertex(x2, y2);
+	}
+
+	/**
+	 * Adds a filled circle to the batch, as a fan of triangles around its center.
+	 *
+	 * @param segments the number of triangles to approximate the circle with
+	 */
+	public void filledCircle(float x, float y, float radius, int segments) {
+		float[] unit = getUnitCircle(segments);
+		reserveFill(segments * 3);
+		for (int i = 0; i < segments; i++) {
+			fillVertex(x, y);
+			fillVertex(x + unit[i * 2] * radius, y + unit[i * 2 + 1] * radius);
+			fillVertex(x + unit[i * 2 + 2] * radius, y + unit[i * 2 + 3] * radius);
+		}
+	}
+
+	/**
+	 * Adds the outline of a circle to the batch.
+	 *
+	 * @param segments the number of lines to approximate the circle with
+	 */
+	public void circle(float x, float y, float radius, int segments) {
+		float[] unit = getUnitCircle(segments);
+		reserveLines(segments * 2);
+		for (int i = 0; i < segments; i++) {
+			lineVertex(x + unit[i * 2] * radius, y + unit[i * 2 + 1] * radius);
+			lineVertex(x + unit[i * 2 + 2] * radius, y + unit[i * 2 + 3] * radius);
+		}
+	}
+
+	/**
+	 * Frees the renderers' buffers.
+	 */
+	public void dispose() {
+		fillRenderer.dispose();
+		lineRenderer.dispose();
+	}
+
+	private void fillVertex(float x, float y) {
+		fillRenderer.color(r, g, b, a);
+		fillRenderer.vertex(x, y, 0);
+	}
+
+	private void lineVertex(float x, float y) {
+		lineRenderer.color(r, g, b, a);
+		lineRenderer.vertex(x, y, 0);
+	}
+
+	/**
+	 * Makes sure there is room for the specified number of filled vertices, flushing the
+	 * buffered fills if there isn't.
+	 */
+	private void reserveFill(int count) {
+		if (fillVertices + count > MAX_VERTICES) {
+			fillRenderer.end();
+			fillRenderer.begin(projection, GL10.GL_TRIANGLES);
+			fillVertices = 0;
+		}
+		fillVertices += count;
+	}
+
+	/**
+	 * Makes sure there is room for the specified number of line vertices, flushing the
+	 * buffered lines if there isn't.
+	 */
+	private void reserveLines(int count) {
+		if (lineVertices + count > MAX_VERTICES) {
+			lineRenderer.end();
+			lineRenderer.begin(projection, GL10.GL_LINES);
+			lineVertices = 0;
+		}
+		lineVertices += count;
+	}
+
+	/**
+	 * @return the points around a circle with a radius of 1, with the first point repeated at
+	 * the end so each segment can be read as a pair of points.
+	 */
+	private float[] getUnitCircle(int segments) {
+		if (segments != circleSegments) {
+			unitCircle = new float[(segments + 1) * 2];
+			float angle = 2 * MathUtils.PI / segments;
+			for (int i = 0; i <= segments; i++) {
+				unitCircle[i * 2] = MathUtils.cos(angle * i);
+				unitCircle[i * 2 + 1] = MathUtils.sin(angle * i);
+			}
+			circleSegments = segments;
+		}
+		return unitCircle;
+	}
+}
@@ -7,23 +7,20 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.GL10;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
-import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
-import com.badlogic.gdx.physics.box2d.Body;
-import com.badlogic.gdx.physics.box2d.World;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
-import java.util.ListIterator;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
 
 /**
  * This is the main class maintaining the state of the simulation.  It primarily keeps track of
  * global simulation details, such as the number of currently existing cars, and what generation
- * we are on.
+ * we are on.<br><br>
+ *
+ * The evolution itself runs on a {@link PhysicsThread}, this only draws the latest
+ * {@link RenderSnapshot} it has published.
  *
  * @author Zach
  */
@@ -34,6 +31,32 @@ public class Simulation implements ApplicationListener {
 	 */
 	private static final int GENERATION_SIZE = 10;
 
+	/**
+	 * The number of children bred for each place in a generation, only the one the surrogate
+	 * predicts will go furthest gets simulated
+	 */
+	private static final int SURROGATE_CANDIDATES = 4;
+
+	/**
+	 * The number of simulated cars the surrogate learns its predictions from
+	 */
+	private static final int SURROGATE_MEMORY = 500;
+
+	/**
+	 * The number of simulated cars whose distances are remembered, so they aren't simulated again
+	 */
+	private static final int FITNESS_CACHE_SIZE = 1000;
+
+	/**
+	 * The file (in the app's local storage) the evolution is checkpointed to
+	 */
+	private static final String CHECKPOINT_FILE = "checkpoint.bin";
+
+	/**
+	 * The file (in the app's local storage) every evaluated car is logged to
+	 */
+	private static final String HISTORY_FILE = "history.log";
+
 	/**
 	 * The libgdx camera to render the cars/terrain to
 	 */
@@ -46,34 +69,34 @@ public class Simulation implements ApplicationListener {
 	private Renderer renderer;
 
 	/**
-	 * The box2d World.  This is the "world" that the actual physics simulation is done in.
+	 * Draws the text over the simulation
 	 */
-	protected World world;
+	private Hud hud;
 
 	/**
-	 * The font class used to draw text to the screen
+	 * Runs the evolution, and publishes each step for drawing
 	 */
-	private BitmapFont font;
+	private PhysicsThread physics;
 
 	/**
-	 * SpriteBatch used with {@link #font} to render text
+	 * True to carry on from the last checkpoint (if there is one), false to start a new evolution
 	 */
-	private SpriteBatch spriteBatch;
+	private final boolean resume;
 
 	/**
-	 * The list of all terrain tiles (box2d physics bodies)
+	 * True while the best recorded run is being replayed instead of the evolution being run
 	 */
-	private List<Body> terrainTiles = new ArrayList<Body>();
+	private volatile boolean replaying = false;
 
 	/**
-	 * The list of cars still alive in the current generation
+	 * How far (in simulated seconds) into the recording the replay is
 	 */
-	private List<Car> activeCars = new ArrayList<Car>(GENERATION_SIZE);
+	private float replayTime = 0;
 
 	/**
-	 * All the cars from the current generation DEAD OR ALIVE
+	 * Reusable buffer for the bodies of the replayed car
 	 */
-	private List<Car> genCars = new ArrayList<Car>(GENERATION_SIZE);
+	private final float[] replayFrame = new float[Trajectory.FRAME_SIZE];
 
 	/**
 	 * A reference to the view containing this simulation.  This is currently
@@ -83,25 +106,27 @@ public class Simulation implements ApplicationListener {
 	private View view;
 
 	/**
-	 * The max distance any car has traveled
+	 * Times each part of every frame
 	 */
-	private double maxDistance = 0;
+	private final Telemetry telemetry = new Telemetry();
 
 	/**
-	 * The generation that {@link #maxDistance} was set during
+	 * True while the telemetry overlay is shown
 	 */
-	private int maxDistanceGeneration = 0;
+	private volatile boolean showTelemetry = false;
 
 	/**
-	 * The height of the screen in pixels, this is only needed
-	 * so we can render the gui text at different points on the screen.
+	 * Set to have the telemetry written to a file at the end of the next frame
 	 */
-	private int screenHeight;
+	private volatile boolean telemetryDumpRequested = false;
 
 	/**
-	 * The current generation number
+	 * @param resume true to carry on from the last checkpoint (if there is one), false to
+	 *               discard it and start a new evolution
 	 */
-	private int generation = 0;
+	public Simulation(boolean resume) {
+		this.resume = resume;
+	}
 
 	/**
 	 * Set this so the simulation can figure out it's size in pixels when it
@@ -121,7 +146,7 @@ public class Simulation implements ApplicationListener {
 		// Get the containing views size
 		// The measured width/height should be set by the time this method is called
 		int screenWidth = view.getMeasuredWidth();
-		screenHeight = view.getMeasuredHeight();
+		int screenHeight = view.getMeasuredHeight();
 		view = null;
 
 		// create the camera
@@ -129,189 +154,248 @@ public class Simulation implements ApplicationListener {
 		camera.setToOrtho(false, 12, 12 * (float) screenHeight / (float) screenWidth);
 		camera.position.set(0, 0, 0);
 
-		font = new BitmapFont(Gdx.files.internal("khmer.fnt"), Gdx.files.internal("khmer.png"), false);
-		spriteBatch = new SpriteBatch();
-
-		// create the world
-		world = new World(new Vector2(0, -9.8f), true);
+		hud = new Hud(new BitmapFont(Gdx.files.internal("khmer.fnt"), Gdx.files.internal("khmer.png"), false), screenWidth, screenHeight);
 
 		// Create the renderer
-		ShapeRenderer shapeRenderer = new ShapeRenderer();
-		renderer = new Renderer(shapeRenderer);
+		renderer = new Renderer(new ShapeBatch());
+
+		// Pick up where the last run left off, if there is one to pick up
+		File checkpointFile = Gdx.files.local(CHECKPOINT_FILE).file();
+		Checkpoint checkpoint = resume ? readCheckpoint(checkpointFile) : null;
+		if (!resume)
+			Checkpoint.delete(checkpointFile);
+
+		// Create initial car generation, and start evolving.  A new run picks one seed that the
+		// terrain and every random choice of the evolution come from, so it can be replayed exactly
+		long terrainSeed;
+		Population population;
+		if (checkpoint != null) {
+			terrainSeed = checkpoint.getTerrainSeed();
+			population = checkpoint.toPopulation(new SelectionScheme.Tournament(2));
+		} else {
+			long seed = new Random().nextLong();
+			Gdx.app.log("Simulation", "Starting a new evolution with seed " + seed);
+			Rng master = new Rng(seed);
+			terrainSeed = master.nextLong();
+			population = new Population(GENERATION_SIZE, master.split());
+			population.setSurrogate(new SurrogateModel(SURROGATE_MEMORY), SURROGATE_CANDIDATES);
+		}
+		FitnessCache fitnessCache = new FitnessCache(FITNESS_CACHE_SIZE);
+		if (checkpoint != null)
+			checkpoint.restoreFitnessCache(fitnessCache);
+		physics = new PhysicsThread(population, terrainSeed, checkpointFile, openHistory(checkpoint != null), telemetry, fitnessCache);
+		physics.start();
+	}
 
-		// Generate the terrain
-		terrainTiles = TerrainGenerator.generate(world);
+	/**
+	 * Switches between running the evolution and replaying the furthest run recorded so far.
+	 * The evolution is paused while replaying, and carries on where it was afterwards.  Nothing
+	 * happens if no run has been recorded yet.
+	 */
+	public void toggleReplay() {
+		if (!replaying && physics.getRecorder().getBest() == null)
+			return;
+		replaying = !replaying;
+		replayTime = 0;
+		updateRenderingMode();
+	}
 
-		// Create initial car generation
-		createGeneration();
+	/**
+	 * Switches to the next faster {@link TimeWarp}, wrapping back around to real time after
+	 * the fastest.
+	 */
+	public void cycleTimeWarp() {
+		physics.setTimeWarp(physics.getTimeWarp().next());
+		updateRenderingMode();
 	}
 
-	@Override
-	public void render() {
-		// Step the physics simulation forward
-		world.step(Gdx.app.getGraphics().getDeltaTime(), 20, 20);
+	/**
+	 * At {@link TimeWarp#MAX} frames are only drawn when the physics thread asks for one, so the
+	 * device spends its time stepping.  Replays are always drawn continuously.
+	 */
+	private void updateRenderingMode() {
+		Gdx.graphics.setContinuousRendering(replaying || physics.getTimeWarp() != TimeWarp.MAX);
+	}
 
-		// Reset gl frame stuff
-		Gdx.gl.glClearColor(1, 1, 1, 1);
-		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
-		Gdx.gl.glEnable(GL10.GL_BLEND);
-		Gdx.gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+	/**
+	 * Shows or hides the telemetry overlay.  Telemetry is recorded either way.
+	 */
+	public void toggleTelemetry() {
+		showTelemetry = !showTelemetry;
+	}
 
-		Gdx.gl.glLineWidth(3);
-		camera.update();
+	/**
+	 * Writes the telemetry recorded so far to a file in the app's local storage, at the end
+	 * of the next frame.
+	 */
+	public void dumpTelemetry() {
+		telemetryDumpRequested = true;
+	}
 
-		// move the camera to the lead car
-		// give it a bit of a linear interpolation to smooth things out
-		Car leadCar = determineLeadCar();
-		Vector3 position = camera.position;
-		position.x += (leadCar.getChassis().getPosition().x - position.x) * 0.2f;
-		position.y += (leadCar.getChassis().getPosition().y - position.y) * 0.2f;
+	@Override
+	public void render() {
+		long frameStart = System.nanoTime();
+		RenderSnapshot snapshot = physics.acquireSnapshot();
 
-		// see if any cars have died since the last cycle through.
-		findDeadCars();
+		Trajectory replay = replaying ? physics.getRecorder().getBest() : null;
+		if (replay != null) {
+			renderReplay(replay, snapshot);
+			return;
+		}
+		physics.setReplayFocus(Float.NaN);
 
-		// check for when we run out of cars, so we can create the next generation
-		if (activeCars.isEmpty())
-			nextGeneration();
+		beginFrame();
 
-		// actually render stuff
+		// move the camera to the lead car
+		int leadCar = determineLeadCar(snapshot);
+		if (leadCar >= 0)
+			followWithCamera(snapshot.getX(leadCar), snapshot.getY(leadCar));
+
+		// actually render stuff, drawing the cars part way from the previous snapshot to the latest
+		// for however long it has been since the latest was published
+		long renderStart = System.nanoTime();
+		long interval = snapshot.getPublishInterval();
+		float alpha = interval > 0 ? Math.min(1f, (float) (renderStart - snapshot.getPublishTime()) / interval) : 1f;
 		renderer.setProjectionMatrix(camera.combined);
-		renderer.renderCars(activeCars);
-		renderer.renderTiles(terrainTiles);
-
-		// Draw car list
-		spriteBatch.begin();
-		for (Car car : activeCars) {
-			String xPos = String.format("%4.2f", car.getChassis().getPosition().x);
-			font.draw(spriteBatch, "Car# " + genCars.indexOf(car) + ": " + xPos + (car.isElite ? "*" : ""), 10, screenHeight - 10 - 27 * activeCars.indexOf(car));
+		renderer.renderCars(snapshot, alpha);
+		renderer.renderTerrain(snapshot.getChunks(), camera);
+		long hudStart = System.nanoTime();
+		telemetry.record(Telemetry.Phase.RENDER, hudStart - renderStart);
+
+		// Draw car list and the current gen / max distance info
+		hud.begin();
+		hud.drawCarList(snapshot);
+		hud.drawGenerationInfo(snapshot);
+		if (physics.getTimeWarp() != TimeWarp.NORMAL)
+			hud.drawSpeed(physics.getTimeWarp(), physics.getAchievedSpeed());
+		if (showTelemetry)
+			hud.drawLines(telemetry.getOverlay());
+		hud.end();
+
+		long frameEnd = System.nanoTime();
+		telemetry.record(Telemetry.Phase.HUD, frameEnd - hudStart);
+		telemetry.record(Telemetry.Phase.FRAME, frameEnd - frameStart);
+		telemetry.frame();
+
+		if (telemetryDumpRequested) {
+			telemetryDumpRequested = false;
+			writeTelemetry();
 		}
-
-		// Draw the current gen / max distance info
-		font.draw(spriteBatch, "Generation: " + generation, 10, 64);
-		if (generation != 0)
-			font.draw(spriteBatch, "Max Distance: " + String.format("%4.2f", maxDistance) + "(gen " + maxDistanceGeneration + ")", 10, 37);
-		spriteBatch.end();
 	}
 
 	/**
-	 * Looks through the list of active cars to determine which
-	 * are still "alive."
-	 */
-	private void findDeadCars() {
-		ListIterator<Car> iter = activeCars.listIterator();
-		// Iterate through each active car and see if it has surpassed it's previous
-		// max distance.  If it hasn't in the last 5 seconds, kill it :(
-		while (iter.hasNext()) {
-			Car car = iter.next();
-			if (car.getChassis().getPosition().x > car.maxDistance) {
-				car.maxDistance = car.getChassis().getPosition().x;
-				car.timeLastMoved = System.currentTimeMillis();
-			} else {
-				if (System.currentTimeMillis() - car.timeLastMoved > 5000) {
-					iter.remove();
-					car.removeFromWorld(world);
-				}
+	 * Writes the telemetry report to a new file in the app's local storage.
+	 */
+	private void writeTelemetry() {
+		File file = Gdx.files.local("telemetry-" + System.currentTimeMillis() + ".txt").file();
+		try {
+			FileWriter out = new FileWriter(file);
+			try {
+				telemetry.writeReport(out);
+			} finally {
+				out.close();
 			}
+			Gdx.app.log("Simulation", "Telemetry written to " + file);
+		} catch (IOException e) {
+			Gdx.app.log("Simulation", "Failed to write telemetry: " + e.getMessage());
 		}
 	}
 
 	/**
-	 * This populates the simulation with a new generation.  The top car from the last
-	 * generation will be placed in this generation automatically as an "elite" (blue car).<br><br>
+	 * Plays back the furthest recorded run, looping once it reaches the end.  The evolution is
+	 * held meanwhile, and its terrain kept up with the replayed car so there is ground to draw
+	 * under it.
 	 *
-	 * The remainder of the generation ({@link #GENERATION_SIZE} - 1) will be populated by
-	 * "mating" the rest of the last generation, the parents will be chosen with an emphasis on
-	 * how well they performed.
-	 */
-	private void nextGeneration() {
-		// Sort the cars by how far they made it
-		Collections.sort(genCars, new CarDistanceSort());
-
-		// Update the top score if necessary
-		if (genCars.get(0).maxDistance > maxDistance) {
-			maxDistance = genCars.get(0).maxDistance;
-			maxDistanceGeneration = generation;
-		}
+	 * @param replay   the recording to play back
+	 * @param snapshot the latest snapshot, for the terrain
+	 */
+	private void renderReplay(Trajectory replay, RenderSnapshot snapshot) {
+		replayTime += Gdx.app.getGraphics().getDeltaTime();
+		if (replayTime > replay.getDuration())
+			replayTime = 0;
+		replay.sample(replayTime, replayFrame);
+		physics.setReplayFocus(replayFrame[0]);
 
-		// Make a clone of the top car
-		Car elite = CarFactory.buildClone(genCars.get(0), world);
-		activeCars.add(elite);
+		beginFrame();
+		followWithCamera(replayFrame[0], replayFrame[1]);
 
-		// make babies!
-		for (int i = 0; i < GENERATION_SIZE - 1; i++) {
-			Car p1 = getParent();
-			Car p2 = p1;
-			while (p2 == p1)
-				p2 = getParent();
+		renderer.setProjectionMatrix(camera.combined);
+		renderer.renderReplay(replay, replayTime);
+		renderer.renderTerrain(snapshot.getChunks(), camera);
 
-			Car baby = CarFactory.buildBabyCar(p1, p2, world);
-			activeCars.add(baby);
-		}
-		// Add the new cars to the list of all cars for the generation
-		genCars.clear();
-		genCars.addAll(activeCars);
+		hud.begin();
+		hud.drawReplayInfo(replay);
+		hud.end();
+	}
+
+	/**
+	 * Clears the screen and sets up gl for drawing a frame.
+	 */
+	private void beginFrame() {
+		Gdx.gl.glClearColor(1, 1, 1, 1);
+		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+		Gdx.gl.glEnable(GL10.GL_BLEND);
+		Gdx.gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
 
-		generation++;
+		Gdx.gl.glLineWidth(3);
+		camera.update();
 	}
 
 	/**
-	 * Gets a Car from the previous generation, with a preference for
-	 * "high performing" cars.
-	 *
-	 * @return a Car from the previous generation
+	 * Moves the camera towards the provided point, with a bit of a linear interpolation
+	 * to smooth things out.
 	 */
-	private Car getParent() {
-		double r = Math.random();
-		if (r == 0)
-			return genCars.get(0);
-		return genCars.get((int) (-Math.log(r) * GENERATION_SIZE) % GENERATION_SIZE);
+	private void followWithCamera(float x, float y) {
+		Vector3 position = camera.position;
+		position.x += (x - position.x) * 0.2f;
+		position.y += (y - position.y) * 0.2f;
 	}
 
 	/**
-	 * Creates an entirely new/random generation.
+	 * @return the last checkpoint, or null if there isn't a usable one
 	 */
-	private void createGeneration() {
-		for (int i = 0; i < GENERATION_SIZE; i++) {
-			Car newCar = CarFactory.buildCar(new CarDefinition(), world, false);
-			activeCars.add(newCar);
+	private Checkpoint readCheckpoint(File checkpointFile) {
+		try {
+			return Checkpoint.read(checkpointFile);
+		} catch (IOException e) {
+			Gdx.app.log("Simulation", "Ignoring unreadable checkpoint: " + e.getMessage());
+			return null;
 		}
-		genCars.addAll(activeCars);
 	}
 
 	/**
-	 * Searches through the list of active cars to find the one
-	 * currently the furthest along the x axis.
-	 *
-	 * @return the Car with the greatest max distance.
-	 */
-	private Car determineLeadCar() {
-		Car leadCar = activeCars.get(0);
-		for (Car car : activeCars) {
-			float leadCarDist = (leadCar == null) ? 0 : leadCar.getChassis().getPosition().x;
-			float curCarDist = car.getChassis().getPosition().x;
-			if (curCarDist > leadCarDist) {
-				leadCar = car;
-			}
+	 * @param append true to carry on the log of the run being resumed, false to start a new one
+	 * @return the history log, or null if it couldn't be opened
+	 */
+	private GenerationLog openHistory(boolean append) {
+		try {
+			return new GenerationLog(Gdx.files.local(HISTORY_FILE).file(), append);
+		} catch (IOException e) {
+			Gdx.app.log("Simulation", "Not logging history: " + e.getMessage());
+			return null;
 		}
-		return leadCar;
 	}
 
 	/**
-	 * Sorting class to sort Cars in a List by their max distance traveled.
+	 * Searches through the cars in the snapshot to find the one
+	 * currently the furthest along the x axis.
+	 *
+	 * @return the place in the snapshot of the lead car, or -1 if there are no cars
 	 */
-	public class CarDistanceSort implements Comparator<Car> {
-		@Override
-		public int compare(Car car, Car car2) {
-			if (car.maxDistance > car2.maxDistance)
-				return -1;
-			else if (car.maxDistance > car2.maxDistance)
-				return 1;
-			else return 0;
+	private int determineLeadCar(RenderSnapshot snapshot) {
+		int leadCar = -1;
+		for (int car = 0; car < snapshot.getCarCount(); car++) {
+			if (leadCar < 0 || snapshot.getX(car) > snapshot.getX(leadCar))
+				leadCar = car;
 		}
+		return leadCar;
 	}
 
 	@Override
 	public void dispose() {
+		physics.stop();
+		renderer.dispose();
+		hud.dispose();
 	}
 
 	@Override
@@ -320,9 +404,11 @@ public class Simulation implements ApplicationListener {
 
 	@Override
 	public void pause() {
+		physics.setPaused(true);
 	}
 
 	@Override
 	public void resume() {
+		physics.setPaused(false);
 	}
-}
\ No newline at end of file
+}
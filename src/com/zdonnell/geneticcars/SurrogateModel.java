@@ -0,0 +1,200 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * A cheap stand-in for the physics, predicting how far a car will make it from the cars that
+ * have already been simulated.  Breeding can use it to try several children for each place in
+ * the next generation and only simulate the most promising one (see
+ * {@link Population#setSurrogate(SurrogateModel, int)}).<br><br>
+ *
+ * The prediction is a k-nearest-neighbour average over the most recently evaluated cars, with
+ * every gene scaled by how widely it varies among them so no single gene dominates the distance.
+ * It only knows the terrain and physics settings it was taught with, so it must only ever learn
+ * from cars evaluated on the same ones.
+ *
+ * @author Zach
+ */
+public class SurrogateModel {
+
+	/**
+	 * The number of neighbours averaged for each prediction
+	 */
+	private static final int NEIGHBOURS = 5;
+
+	/**
+	 * The number of cars that have to be learned before predictions are worth anything
+	 */
+	private static final int MIN_SAMPLES = 20;
+
+	/**
+	 * The genomes of the remembered cars, one after another
+	 */
+	private final float[] genes;
+
+	/**
+	 * How far each remembered car made it
+	 */
+	private final float[] fitness;
+
+	/**
+	 * The number of cars remembered, and where the next one goes once the memory is full
+	 */
+	private int count = 0;
+	private int next = 0;
+
+	/**
+	 * One over the spread of each gene among the remembered cars
+	 */
+	private final float[] scale = new float[CarDefinition.GENOME_LENGTH];
+
+	/**
+	 * The nearest neighbours found by the current prediction
+	 */
+	private final float[] nearestDistance = new float[NEIGHBOURS];
+	private final float[] nearestFitness = new float[NEIGHBOURS];
+
+	/**
+	 * @param capacity the number of evaluated cars remembered, the oldest are forgotten first
+	 */
+	public SurrogateModel(int capacity) {
+		genes = new float[capacity * CarDefinition.GENOME_LENGTH];
+		fitness = new float[capacity];
+	}
+
+	/**
+	 * Remembers how far each car of a generation made it.
+	 *
+	 * @param definitions the cars
+	 * @param distances   how far each of them made it
+	 */
+	public void learn(CarDefinition[] definitions, float[] distances) {
+		int capacity = fitness.length;
+		for (int i = 0; i < definitions.length; i++) {
+			System.arraycopy(definitions[i].getGenes(), 0, genes, next * CarDefinition.GENOME_LENGTH, CarDefinition.GENOME_LENGTH);
+			fitness[next] = distances[i];
+			next = (next + 1) % capacity;
+			count = Math.min(count + 1, capacity);
+		}
+		updateScale();
+	}
+
+	/**
+	 * @return true once enough cars have been learned to make predictions
+	 */
+	public boolean isReady() {
+		return count >= MIN_SAMPLES;
+	}
+
+	/**
+	 * Predicts how far a car will make it.
+	 *
+	 * @param definition the car
+	 * @return the predicted distance, 0 if nothing has been learned yet
+	 */
+	public float predict(CarDefinition definition) {
+		float[] candidate = definition.getGenes();
+		int found = 0;
+		for (int sample = 0; sample < count; sample++) {
+			int offset = sample * CarDefinition.GENOME_LENGTH;
+			float distance = 0;
+			for (int g = 0; g < CarDefinition.GENOME_LENGTH; g++) {
+				float d = (candidate[g] - genes[offset + g]) * scale[g];
+				distance += d * d;
+			}
+
+			// Insert into the sorted list of nearest neighbours, if it's near enough
+			if (found < NEIGHBOURS)
+				found++;
+			else if (distance >= nearestDistance[NEIGHBOURS - 1])
+				continue;
+			int i = found - 1;
+			while (i > 0 && nearestDistance[i - 1] > distance) {
+				nearestDistance[i] = nearestDistance[i - 1];
+				nearestFitness[i] = nearestFitness[i - 1];
+				i--;
+			}
+			nearestDistance[i] = distance;
+			nearestFitness[i] = fitness[sample];
+		}
+
+		// Closer neighbours count for more, an exact match counts for everything
+		float total = 0, weights = 0;
+		for (int i = 0; i < found; i++) {
+			if (nearestDistance[i] == 0)
+				return nearestFitness[i];
+			float weight = 1 / nearestDistance[i];
+			total += nearestFitness[i] * weight;
+			weights += weight;
+		}
+		return found > 0 ? total / weights : 0;
+	}
+
+	/**
+	 * @return the number of evaluated cars that can be remembered
+	 */
+	public int getCapacity() {
+		return fitness.length;
+	}
+
+	/**
+	 * @return the number of cars remembered
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return where the next car learned goes, for {@link Checkpoint}
+	 */
+	int getNext() {
+		return next;
+	}
+
+	/**
+	 * Copies out everything remembered, for {@link Checkpoint}.
+	 *
+	 * @param genesOut   filled with the genomes of the {@link #size()} remembered cars
+	 * @param fitnessOut filled with how far each of them made it
+	 */
+	void copyTo(float[] genesOut, float[] fitnessOut) {
+		System.arraycopy(genes, 0, genesOut, 0, count * CarDefinition.GENOME_LENGTH);
+		System.arraycopy(fitness, 0, fitnessOut, 0, count);
+	}
+
+	/**
+	 * Puts back what a model of the same capacity remembered, so it makes exactly the same
+	 * predictions and forgets cars in exactly the same order.
+	 *
+	 * @param savedGenes   the genomes from {@link #copyTo(float[], float[])}
+	 * @param savedFitness the distances from {@link #copyTo(float[], float[])}
+	 * @param savedNext    the value of {@link #getNext()}
+	 * @throws IllegalArgumentException if the state couldn't have come from a model this size
+	 */
+	void restore(float[] savedGenes, float[] savedFitness, int savedNext) {
+		int capacity = fitness.length;
+		int saved = savedFitness.length;
+		if (saved > capacity || savedGenes.length != saved * CarDefinition.GENOME_LENGTH || savedNext < 0
+				|| savedNext >= Math.max(capacity, 1) || (saved < capacity && savedNext != saved))
+			throw new IllegalArgumentException("Not the state of a surrogate with capacity " + capacity);
+
+		System.arraycopy(savedGenes, 0, genes, 0, savedGenes.length);
+		System.arraycopy(savedFitness, 0, fitness, 0, saved);
+		count = saved;
+		next = savedNext;
+		updateScale();
+	}
+
+	/**
+	 * Recomputes the scale of each gene from the range it takes among the remembered cars.
+	 */
+	private void updateScale() {
+		for (int g = 0; g < CarDefinition.GENOME_LENGTH; g++) {
+			float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+			for (int sample = 0; sample < count; sample++) {
+				float value = genes[sample * CarDefinition.GENOME_LENGTH + g];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			scale[g] = max > min ? 1 / (max - min) : 0;
+		}
+	}
+}
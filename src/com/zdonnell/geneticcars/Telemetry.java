@@ -0,0 +1,368 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * Keeps track of where the time goes in the simulation: a latency histogram for each
+ * {@link Phase} of a frame, how many bodies, fixtures, joints and contacts are in the world, how
+ * many cars are evaluated per second and roughly how fast memory is being allocated.<br><br>
+ *
+ * Recording a phase is a couple of {@link System#nanoTime()} calls and an array increment, and
+ * everything else is worked out once a second, so this is cheap enough to leave running all the
+ * time.  Each phase should only be recorded from one thread, and the world sampled from the thread
+ * stepping it.  Readings taken from other threads may be slightly out of date.
+ *
+ * @author Zach
+ */
+public class Telemetry {
+
+	/**
+	 * The parts of a frame that are timed separately
+	 */
+	public enum Phase {
+		TERRAIN("terrain"),
+		PHYSICS("physics"),
+		DEAD_CARS("dead cars"),
+		RENDER("render"),
+		HUD("hud"),
+		FRAME("frame");
+
+		private final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	/**
+	 * How often (in nanoseconds) the rates and world counts are worked out
+	 */
+	private static final long WINDOW = 1000000000L;
+
+	/**
+	 * The latency of each phase, indexed by the phase's ordinal
+	 */
+	private final Histogram[] histograms = new Histogram[Phase.values().length];
+
+	/**
+	 * The total number of cars evaluated, and the total as of the start of the current window
+	 */
+	private volatile long evaluations = 0;
+	private long windowEvaluations = 0;
+
+	/**
+	 * The estimated bytes allocated in the current window, and the heap in use at the last frame
+	 */
+	private long windowAllocated = 0;
+	private long lastHeapUsed = -1;
+
+	/**
+	 * When the current window started
+	 */
+	private long windowStart = System.nanoTime();
+
+	/**
+	 * When the world was last counted
+	 */
+	private long lastWorldSample = 0;
+
+	/**
+	 * The results of the last complete window
+	 */
+	private float evaluationsPerSecond;
+	private float allocationRate;
+	private volatile int bodyCount;
+	private volatile int fixtureCount;
+	private volatile int jointCount;
+	private volatile int contactCount;
+
+	/**
+	 * The breeding counters as of the last generation bred
+	 */
+	private volatile long duplicatesRejected;
+	private volatile long randomReplacements;
+	private volatile long candidatesScreenedOut;
+
+	/**
+	 * The fitness cache lookups, as of the last generation built
+	 */
+	private volatile long cacheHits;
+	private volatile long cacheMisses;
+
+	/**
+	 * The overlay text, rebuilt once per window
+	 */
+	private final String[] overlay = new String[histograms.length + 5];
+
+	public Telemetry() {
+		for (int i = 0; i < histograms.length; i++)
+			histograms[i] = new Histogram();
+		updateOverlay();
+	}
+
+	/**
+	 * Records how long a phase took.
+	 *
+	 * @param phase the phase
+	 * @param nanos how long (in nanoseconds) it took
+	 */
+	public void record(Phase phase, long nanos) {
+		histograms[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Records that a car has finished being evaluated.  Only call this from one thread.
+	 */
+	public void carEvaluated() {
+		evaluations++;
+	}
+
+	/**
+	 * Records how many duplicate children breeding has thrown away so far (each one an evaluation
+	 * saved), how many it replaced with random cars, and how many the surrogate screened out.
+	 *
+	 * @param population the population that just bred a new generation
+	 */
+	public void recordBreeding(Population population) {
+		duplicatesRejected = population.getDuplicatesRejected();
+		randomReplacements = population.getRandomReplacements();
+		candidatesScreenedOut = population.getCandidatesScreenedOut();
+	}
+
+	/**
+	 * Records how many cars were looked up in the fitness cache instead of being simulated.
+	 *
+	 * @param fitnessCache the cache the cars were looked up in
+	 */
+	public void recordFitnessCache(FitnessCache fitnessCache) {
+		cacheHits = fitnessCache.getHits();
+		cacheMisses = fitnessCache.getMisses();
+	}
+
+	/**
+	 * Counts the contents of the world, at most once a second.  Call this regularly from the
+	 * thread stepping the world.
+	 *
+	 * @param world the world to count the contents of
+	 */
+	public void sampleWorld(World world) {
+		long now = System.nanoTime();
+		if (now - lastWorldSample < WINDOW)
+			return;
+		lastWorldSample = now;
+
+		bodyCount = world.getBodyCount();
+		jointCount = world.getJointCount();
+		contactCount = world.getContactCount();
+
+		int fixtures = 0;
+		Iterator<Body> bodies = world.getBodies();
+		while (bodies.hasNext())
+			fixtures += bodies.next().getFixtureList().size();
+		fixtureCount = fixtures;
+	}
+
+	/**
+	 * Updates the allocation estimate, and once a second works out the rates.  Call this once
+	 * per frame.<br><br>
+	 *
+	 * The allocation rate is estimated from how much the heap in use grows from frame to frame,
+	 * ignoring the frames a garbage collection happened in, so it reads a little low.
+	 */
+	public void frame() {
+		Runtime runtime = Runtime.getRuntime();
+		long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+		if (lastHeapUsed >= 0 && heapUsed > lastHeapUsed)
+			windowAllocated += heapUsed - lastHeapUsed;
+		lastHeapUsed = heapUsed;
+
+		long now = System.nanoTime();
+		long elapsed = now - windowStart;
+		if (elapsed < WINDOW)
+			return;
+
+		float seconds = elapsed / 1e9f;
+		evaluationsPerSecond = (evaluations - windowEvaluations) / seconds;
+		allocationRate = windowAllocated / seconds;
+		windowEvaluations = evaluations;
+		windowAllocated = 0;
+		windowStart = now;
+
+		updateOverlay();
+	}
+
+	/**
+	 * @param phase the phase
+	 * @return the latencies recorded for the phase
+	 */
+	public Histogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	/**
+	 * @return the number of cars evaluated per second, over the last complete second
+	 */
+	public float getEvaluationsPerSecond() {
+		return evaluationsPerSecond;
+	}
+
+	/**
+	 * @return the estimated bytes allocated per second, over the last complete second
+	 */
+	public float getAllocationRate() {
+		return allocationRate;
+	}
+
+	/**
+	 * @return the lines of text to show in the overlay, updated once a second
+	 */
+	public String[] getOverlay() {
+		return overlay;
+	}
+
+	/**
+	 * Writes out everything recorded so far, including the full histogram of every phase.
+	 *
+	 * @param out where to write the report
+	 */
+	public void writeReport(Writer out) throws IOException {
+		out.write("evaluations: " + evaluations + "\n");
+		out.write("evaluations/s: " + evaluationsPerSecond + "\n");
+		out.write("allocation rate (bytes/s): " + allocationRate + "\n");
+		out.write("bodies: " + bodyCount + " fixtures: " + fixtureCount + " joints: " + jointCount + " contacts: " + contactCount + "\n");
+		out.write("duplicates rejected: " + duplicatesRejected + " random replacements: " + randomReplacements
+				+ " screened out: " + candidatesScreenedOut + "\n");
+		out.write("fitness cache hits: " + cacheHits + " misses: " + cacheMisses + " hit rate: " + hitRate() + "\n");
+
+		for (Phase phase : Phase.values()) {
+			Histogram histogram = getHistogram(phase);
+			out.write("\n" + phase.getLabel() + ": count " + histogram.getCount() + ", mean " + histogram.getMean()
+					+ "ns, p50 " + histogram.getPercentile(0.5f) + "ns, p99 " + histogram.getPercentile(0.99f)
+					+ "ns, max " + histogram.getMax() + "ns\n");
+			histogram.writeBuckets(out);
+		}
+		out.flush();
+	}
+
+	private void updateOverlay() {
+		for (Phase phase : Phase.values()) {
+			Histogram histogram = getHistogram(phase);
+			overlay[phase.ordinal()] = phase.getLabel() + " p50 " + millis(histogram.getPercentile(0.5f))
+					+ " p99 " + millis(histogram.getPercentile(0.99f)) + " ms";
+		}
+		int line = histograms.length;
+		overlay[line++] = "evals/s " + Math.round(evaluationsPerSecond) + "  alloc " + Math.round(allocationRate / 1024) + " KB/s";
+		overlay[line++] = "bodies " + bodyCount + "  fixtures " + fixtureCount;
+		overlay[line++] = "joints " + jointCount + "  contacts " + contactCount;
+		overlay[line++] = "dupes " + duplicatesRejected + "  random " + randomReplacements + "  screened " + candidatesScreenedOut;
+		overlay[line] = "cache hits " + cacheHits + "  rate " + Math.round(hitRate() * 100) + "%";
+	}
+
+	/**
+	 * @return the fraction (0 to 1) of fitness cache lookups that found a result
+	 */
+	private float hitRate() {
+		long hits = cacheHits;
+		long lookups = hits + cacheMisses;
+		return lookups == 0 ? 0 : (float) hits / lookups;
+	}
+
+	/**
+	 * @return the nanoseconds as milliseconds, to two decimal places
+	 */
+	private static String millis(long nanos) {
+		long hundredths = nanos / 10000;
+		return hundredths / 100 + "." + (hundredths % 100 < 10 ? "0" : "") + hundredths % 100;
+	}
+
+	/**
+	 * A latency histogram with logarithmic buckets, each power of two split into eight, so every
+	 * recorded value is within 12.5% of its bucket.  Recording never allocates.
+	 */
+	public static class Histogram {
+
+		/**
+		 * Values are split into 2^SUB_BITS buckets per power of two
+		 */
+		private static final int SUB_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+		private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+		private long count = 0;
+		private long total = 0;
+		private long max = 0;
+
+		/**
+		 * @param value the value to record, negative values are counted as 0
+		 */
+		public void record(long value) {
+			value = Math.max(0, value);
+			counts[bucket(value)]++;
+			count++;
+			total += value;
+			max = Math.max(max, value);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public long getMean() {
+			return count == 0 ? 0 : total / count;
+		}
+
+		/**
+		 * @param percentile between 0 and 1
+		 * @return the lower bound of the bucket the percentile falls in, or 0 if nothing has been
+		 *         recorded
+		 */
+		public long getPercentile(float percentile) {
+			long target = (long) Math.ceil(percentile * count);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target && seen > 0)
+					return lowerBound(i);
+			}
+			return 0;
+		}
+
+		/**
+		 * Writes the lower bound and count of every bucket that has been used.
+		 */
+		void writeBuckets(Writer out) throws IOException {
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] > 0)
+					out.write("  >= " + lowerBound(i) + ": " + counts[i] + "\n");
+			}
+		}
+
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS)
+				return (int) value;
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		private static long lowerBound(int bucket) {
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+			return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		}
+	}
+}
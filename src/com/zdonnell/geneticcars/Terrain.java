@@ -0,0 +1,229 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The terrain the cars drive along, made up of {@link TerrainChunk}s of tiles.<br><br>
+ *
+ * Fixed terrain is generated all at once, as a single chunk of
+ * {@link TerrainGenerator#MAX_GROUND_PIECES} tiles.  Streaming terrain is instead generated a
+ * chunk at a time ahead of the lead car and removed again behind the last car, so it never ends,
+ * and the number of bodies in the world stays the same however far the cars get.  Every tile is a
+ * function of the seed and its index alone, so a chunk that is removed and generated again later
+ * comes back exactly the same.  Either way, chunks can be built as separate tiles or as a
+ * single chain (see {@link TerrainGenerator}).
+ *
+ * @author Zach
+ */
+public class Terrain {
+
+	/**
+	 * The number of tiles in each chunk of streaming terrain
+	 */
+	public static final int STREAMING_CHUNK_SIZE = 20;
+
+	/**
+	 * How far (in box2d units/meters) ahead of the lead car streaming terrain is kept generated
+	 */
+	private static final float STREAM_AHEAD = 40f;
+
+	/**
+	 * How far (in box2d units/meters) behind the last car streaming terrain is kept around
+	 */
+	private static final float STREAM_BEHIND = 15f;
+
+	/**
+	 * The world the terrain is built in
+	 */
+	private final World world;
+
+	/**
+	 * The seed every tile of the terrain is generated from
+	 */
+	private final long seed;
+
+	/**
+	 * The number of tiles in each chunk
+	 */
+	private final int chunkSize;
+
+	/**
+	 * True if chunks are generated and removed as the cars move, false if the terrain is fixed
+	 */
+	private final boolean streaming;
+
+	/**
+	 * True if each chunk is built as a chain, false if it's built as separate tiles
+	 */
+	private final boolean chain;
+
+	/**
+	 * The chunks currently built in the world, in order
+	 */
+	private final List<TerrainChunk> chunks = new ArrayList<TerrainChunk>();
+
+	/**
+	 * A copy of {@link #chunks}, replaced whenever they change so it can be handed to other threads
+	 */
+	private TerrainChunk[] chunkArray;
+
+	/**
+	 * The start position of every chunk generated so far, as x, y pairs, so chunks that were
+	 * removed can be generated again.
+	 */
+	private float[] chunkStarts = new float[16];
+
+	/**
+	 * The number of chunks whose start position is known
+	 */
+	private int knownChunks = 0;
+
+	/**
+	 * Creates the terrain, and generates the first chunk.
+	 *
+	 * @param world     the world to build the terrain in
+	 * @param seed      the seed every tile is generated from
+	 * @param chunkSize the number of tiles in each chunk
+	 * @param streaming true to generate and remove chunks as the cars move
+	 * @param chain     true to build each chunk as a chain, false for separate tiles
+	 * @param start     the point the first tile starts at
+	 */
+	Terrain(World world, long seed, int chunkSize, boolean streaming, boolean chain, Vector2 start) {
+		this.world = world;
+		this.seed = seed;
+		this.chunkSize = chunkSize;
+		this.streaming = streaming;
+		this.chain = chain;
+
+		setChunkStart(0, start);
+		chunks.add(buildChunk(0));
+		chunkArray = chunks.toArray(new TerrainChunk[chunks.size()]);
+	}
+
+	/**
+	 * @return the seed every tile of the terrain is generated from
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return true if this terrain is generated and removed as the cars move
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * @return true if each chunk is built as a chain, false if it's built as separate tiles
+	 */
+	public boolean isChain() {
+		return chain;
+	}
+
+	/**
+	 * @return the chunks currently built in the world, in order
+	 */
+	public List<TerrainChunk> getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return the chunks currently built in the world, in order.  The array is never modified, a
+	 *         new one is made whenever the chunks change, so it can be read from any thread once
+	 *         safely handed over.
+	 */
+	public TerrainChunk[] getChunkArray() {
+		return chunkArray;
+	}
+
+	/**
+	 * Makes sure streaming terrain covers the range the cars are in, generating chunks ahead of
+	 * the lead car and removing the ones well behind the last car (or far ahead, once a new
+	 * generation starts back at the beginning).  Fixed terrain is left alone.
+	 *
+	 * @param tailX the x position of the car furthest back
+	 * @param leadX the x position of the car furthest ahead
+	 */
+	public void update(float tailX, float leadX) {
+		update(tailX, leadX, true);
+	}
+
+	/**
+	 * Makes sure streaming terrain covers the range, like {@link #update(float, float)}, but
+	 * never removes a chunk.  Anything already on the terrain, such as cars that are paused while
+	 * another part of the track is looked at, keeps the ground under it.
+	 *
+	 * @param tailX the x position furthest back that needs terrain around it
+	 * @param leadX the x position furthest ahead that needs terrain around it
+	 */
+	public void extend(float tailX, float leadX) {
+		update(tailX, leadX, false);
+	}
+
+	/**
+	 * Generates the chunks the range needs, and removes the ones well out of it if asked to.
+	 */
+	private void update(float tailX, float leadX, boolean remove) {
+		if (!streaming)
+			return;
+
+		float minX = tailX - STREAM_BEHIND;
+		float maxX = leadX + STREAM_AHEAD;
+		int before = chunks.size();
+		int firstBefore = first().getIndex();
+
+		// Generate ahead of the lead car
+		while (last().getMaxX() < maxX)
+			chunks.add(buildChunk(last().getIndex() + 1));
+
+		// Generate behind the last car, for a new generation starting over
+		while (first().getIndex() > 0 && first().getMinX() > minX)
+			chunks.add(0, buildChunk(first().getIndex() - 1));
+
+		// Remove what is well out of range on either side
+		while (remove && chunks.size() > 1 && first().getMaxX() < minX)
+			chunks.remove(0).removeFromWorld(world);
+		while (remove && chunks.size() > 1 && last().getMinX() > maxX)
+			chunks.remove(chunks.size() - 1).removeFromWorld(world);
+
+		if (chunks.size() != before || first().getIndex() != firstBefore)
+			chunkArray = chunks.toArray(new TerrainChunk[chunks.size()]);
+	}
+
+	private TerrainChunk first() {
+		return chunks.get(0);
+	}
+
+	private TerrainChunk last() {
+		return chunks.get(chunks.size() - 1);
+	}
+
+	/**
+	 * Generates the specified chunk in the world, and records where the following one starts.
+	 */
+	private TerrainChunk buildChunk(int index) {
+		Vector2 start = new Vector2(chunkStarts[index * 2], chunkStarts[index * 2 + 1]);
+		TerrainChunk chunk = chain
+				? TerrainGenerator.createChainChunk(world, seed, index, index * chunkSize, chunkSize, start)
+				: TerrainGenerator.createChunk(world, seed, index, index * chunkSize, chunkSize, start);
+		if (index + 1 >= knownChunks)
+			setChunkStart(index + 1, chunk.getEndPosition());
+		return chunk;
+	}
+
+	private void setChunkStart(int index, Vector2 start) {
+		if (index * 2 + 2 > chunkStarts.length) {
+			float[] grown = new float[chunkStarts.length * 2];
+			System.arraycopy(chunkStarts, 0, grown, 0, chunkStarts.length);
+			chunkStarts = grown;
+		}
+		chunkStarts[index * 2] = start.x;
+		chunkStarts[index * 2 + 1] = start.y;
+		knownChunks = Math.max(knownChunks, index + 1);
+	}
+}
@@ -0,0 +1,216 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+
+import java.util.List;
+
+/**
+ * A run of consecutive terrain tiles: the box2d bodies making up that piece of ground, along with
+ * the world-space outline of every tile.  Tiles never move, so their outlines are worked out once
+ * when the chunk is generated, letting the renderer draw them without going back into box2d and
+ * skip every tile that isn't on screen.<br><br>
+ *
+ * A chunk built as a chain has a single body, and its outline is the chain itself: one point
+ * where each tile starts, plus the point the last one ends.  Each tile is then the segment from
+ * its point to the next.
+ *
+ * @author Zach
+ * @see Terrain
+ */
+public class TerrainChunk {
+
+	/**
+	 * The number of vertices in each tile's outline
+	 */
+	public static final int VERTICES_PER_TILE = 4;
+
+	/**
+	 * The index of this chunk along the terrain
+	 */
+	private final int index;
+
+	/**
+	 * The box2d physics bodies of the tiles, or the single body of a chain
+	 */
+	private final List<Body> tiles;
+
+	/**
+	 * The world-space outline of each tile, as x, y pairs.  Tile i starts at
+	 * index i * {@link #VERTICES_PER_TILE} * 2, or i * 2 for a chain.
+	 */
+	private final float[] vertices;
+
+	/**
+	 * True if the chunk is built as a chain
+	 */
+	private final boolean chain;
+
+	/**
+	 * For each tile, the furthest right (max x) any tile up to and including it reaches.
+	 * Never decreases, so it can be binary searched.
+	 */
+	private final float[] reachRight;
+
+	/**
+	 * For each tile, the furthest left (min x) any tile from it onwards reaches.
+	 * Never decreases, so it can be binary searched.
+	 */
+	private final float[] reachLeft;
+
+	/**
+	 * The point the next chunk's first tile starts at
+	 */
+	private final Vector2 endPosition;
+
+	/**
+	 * Creates a chunk from its generated tiles.
+	 *
+	 * @param index       the index of this chunk along the terrain
+	 * @param tiles       the box2d bodies of the tiles in order, or the single body of a chain
+	 * @param vertices    the world-space outline of each tile, or the points of the chain
+	 * @param chain       true if the chunk is built as a chain
+	 * @param endPosition the point the next chunk's first tile starts at
+	 */
+	TerrainChunk(int index, List<Body> tiles, float[] vertices, boolean chain, Vector2 endPosition) {
+		this.index = index;
+		this.tiles = tiles;
+		this.endPosition = new Vector2(endPosition);
+		this.vertices = vertices;
+		this.chain = chain;
+
+		int tileCount = chain ? vertices.length / 2 - 1 : vertices.length / (VERTICES_PER_TILE * 2);
+		reachRight = new float[tileCount];
+		reachLeft = new float[tileCount];
+
+		float right = -Float.MAX_VALUE;
+		for (int i = 0; i < tileCount; i++) {
+			right = Math.max(right, getTileBound(i, true));
+			reachRight[i] = right;
+		}
+		float left = Float.MAX_VALUE;
+		for (int i = tileCount - 1; i >= 0; i--) {
+			left = Math.min(left, getTileBound(i, false));
+			reachLeft[i] = left;
+		}
+	}
+
+	/**
+	 * @return the index of this chunk along the terrain
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the point the next chunk's first tile starts at
+	 */
+	public Vector2 getEndPosition() {
+		return endPosition;
+	}
+
+	/**
+	 * @return the furthest left any tile of this chunk reaches
+	 */
+	public float getMinX() {
+		return reachLeft[0];
+	}
+
+	/**
+	 * @return the furthest right any tile of this chunk reaches
+	 */
+	public float getMaxX() {
+		return reachRight[reachRight.length - 1];
+	}
+
+	/**
+	 * Removes the tiles of this chunk from the world they were built in.
+	 *
+	 * @param world the world the chunk was built in
+	 */
+	public void removeFromWorld(World world) {
+		for (Body tile : tiles)
+			world.destroyBody(tile);
+	}
+
+	/**
+	 * @return true if the chunk is built as a chain, see {@link #getVertices()}
+	 */
+	public boolean isChain() {
+		return chain;
+	}
+
+	/**
+	 * @return the box2d physics bodies of the tiles, or the single body of a chain
+	 */
+	public List<Body> getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * @return the number of tiles in the chunk
+	 */
+	public int getTileCount() {
+		return reachRight.length;
+	}
+
+	/**
+	 * @return the world-space outline of every tile, as x, y pairs, {@link #VERTICES_PER_TILE}
+	 * vertices per tile.  For a chain, the points of the chain instead.
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @param minX the left edge of the range of interest
+	 * @return the index of the first tile that could reach into the range
+	 */
+	public int getFirstTile(float minX) {
+		// Find the first tile whose reach to the right gets past minX
+		int low = 0, high = reachRight.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (reachRight[mid] < minX)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @param maxX the right edge of the range of interest
+	 * @return one past the index of the last tile that could reach into the range
+	 */
+	public int getEndTile(float maxX) {
+		// Find the first tile whose reach to the left is entirely past maxX
+		int low = 0, high = reachLeft.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (reachLeft[mid] <= maxX)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @param tile  the index of the tile
+	 * @param right true for the tile's max x, false for its min x
+	 * @return the horizontal bound of the tile's outline
+	 */
+	private float getTileBound(int tile, boolean right) {
+		// A chain segment shares its end point with the start of the next one
+		int count = chain ? 2 : VERTICES_PER_TILE;
+		int offset = chain ? tile * 2 : tile * VERTICES_PER_TILE * 2;
+		float bound = vertices[offset];
+		for (int i = 1; i < count; i++) {
+			float x = vertices[offset + i * 2];
+			bound = right ? Math.max(bound, x) : Math.min(bound, x);
+		}
+		return bound;
+	}
+}
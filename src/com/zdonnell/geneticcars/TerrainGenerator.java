@@ -3,6 +3,7 @@ package com.zdonnell.geneticcars;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.ChainShape;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.physics.box2d.World;
@@ -12,7 +13,12 @@ import java.util.List;
 
 /**
  * This class houses the terrain generation methods.  There is no need to instantiate it
- * as all the generation methods are static.
+ * as all the generation methods are static.<br><br>
+ *
+ * Terrain can be built two ways ({@link TerrainMode}) from the same random tile angles.  Tiles are a separate static
+ * body with a polygon per tile, as the simulation has always used.  A chain is a single static
+ * body per chunk with one chain shape tracing the path the tiles follow, which gives box2d's
+ * broadphase far fewer proxies to track and no seams between tiles for cars to catch on.
  *
  * @author Zach
  */
@@ -29,56 +35,213 @@ public class TerrainGenerator {
 	private static final float GROUND_PIECE_HEIGHT = 0.15f;
 
 	/**
-	 * The total number of ground tiles/pieces
+	 * The total number of ground tiles/pieces in fixed terrain.  This is also the distance
+	 * (in tiles) over which the terrain gets steeper, streaming terrain stays at the steepest
+	 * after this point.
+	 */
+	public static final int MAX_GROUND_PIECES = 200;
+
+	/**
+	 * Where the surface of the first tile starts.  The first tiles are close to flat, so this is
+	 * roughly the height of the ground under a newly built car.
+	 */
+	static final float START_X = -5, START_Y = -2;
+
+	/**
+	 * Generates fixed terrain of {@link #MAX_GROUND_PIECES} tiles in the provided world.  The same
+	 * seed always produces the same terrain, so identical copies can be placed in several worlds.
+	 *
+	 * @param world the world to place the terrain in
+	 * @param seed  the seed used to pick the angle of each tile
+	 * @return the generated terrain
 	 */
-	private static final int MAX_GROUND_PIECES = 200;
+	public static Terrain generate(World world, long seed) {
+		return generate(world, seed, TerrainMode.TILES);
+	}
 
 	/**
-	 * Generates terrain in the provided world.
+	 * Generates fixed terrain of {@link #MAX_GROUND_PIECES} tiles in the provided world.
 	 *
 	 * @param world the world to place the terrain in
-	 * @return a list of all the terrain tiles generated
+	 * @param seed  the seed used to pick the angle of each tile
+	 * @param mode  how to build the terrain in box2d
+	 * @return the generated terrain
 	 */
-	public static List<Body> generate(World world) {
-		List<Body> terrainTiles = new ArrayList<Body>(MAX_GROUND_PIECES);
+	public static Terrain generate(World world, long seed, TerrainMode mode) {
+		return new Terrain(world, seed, MAX_GROUND_PIECES, false, mode == TerrainMode.CHAIN, new Vector2(START_X, START_Y));
+	}
+
+	/**
+	 * Generates streaming terrain in the provided world.  Only the first chunk is generated
+	 * up front, the rest follows the cars as {@link Terrain#update(float, float)} is called.  The
+	 * tiles are the same as the fixed terrain generated from the same seed, for as far as that goes.
+	 *
+	 * @param world the world to place the terrain in
+	 * @param seed  the seed used to pick the angle of each tile
+	 * @return the generated terrain
+	 */
+	public static Terrain generateStreaming(World world, long seed) {
+		return generateStreaming(world, seed, TerrainMode.TILES);
+	}
+
+	/**
+	 * Generates streaming terrain in the provided world.
+	 *
+	 * @param world the world to place the terrain in
+	 * @param seed  the seed used to pick the angle of each tile
+	 * @param mode  how to build each chunk in box2d
+	 * @return the generated terrain
+	 * @see #generateStreaming(World, long)
+	 */
+	public static Terrain generateStreaming(World world, long seed, TerrainMode mode) {
+		return new Terrain(world, seed, Terrain.STREAMING_CHUNK_SIZE, true, mode == TerrainMode.CHAIN, new Vector2(START_X, START_Y));
+	}
+
+	/**
+	 * Generates a chunk of consecutive tiles in the provided world, as separate tile bodies.
+	 *
+	 * @param world     the world to place the tiles in
+	 * @param seed      the seed of the terrain the chunk is part of
+	 * @param index     the index of the chunk along the terrain
+	 * @param firstTile the index (along the whole terrain) of the chunk's first tile
+	 * @param tileCount the number of tiles in the chunk
+	 * @param start     the point the first tile starts at
+	 * @return the generated chunk
+	 */
+	static TerrainChunk createChunk(World world, long seed, int index, int firstTile, int tileCount, Vector2 start) {
+		List<Body> terrainTiles = new ArrayList<Body>(tileCount);
+		float[] vertices = new float[tileCount * TerrainChunk.VERTICES_PER_TILE * 2];
 		Body lastTile;
-		Vector2 tilePosition = new Vector2(-5, -2);
-		for (int i = 0; i < MAX_GROUND_PIECES; i++) {
-			// Create a tile, it's rotation potentially more extreme the closer to the end of the terrain we get.
-			lastTile = createTerrainTile(world, tilePosition, (Math.random() * 3 - 1.5) * 1.5 * i / MAX_GROUND_PIECES);
+		Vector2 tilePosition = new Vector2(start);
+		Vector2 vertex = new Vector2();
+
+		// The definitions and shape are reused for every tile, box2d copies them into each body
+		BodyDef tileBodyDef = new BodyDef();
+		FixtureDef tileFixDef = new FixtureDef();
+		PolygonShape tileShape = NativeShapes.newPolygon();
+		for (int i = 0; i < tileCount; i++) {
+			// Create a tile, it's rotation potentially more extreme the further along the terrain we get.
+			int tile = firstTile + i;
+			lastTile = createTerrainTile(world, tilePosition, tileAngle(seed, tile), tileBodyDef, tileFixDef, tileShape);
 			terrainTiles.add(lastTile);
 			PolygonShape lastTileShape = (PolygonShape) lastTile.getFixtureList().get(0).getShape();
-			lastTileShape.getVertex(3, tilePosition);
-			tilePosition = lastTile.getWorldPoint(tilePosition);
+
+			// Tiles never move, so record their world-space outline once for rendering
+			for (int v = 0; v < TerrainChunk.VERTICES_PER_TILE; v++) {
+				lastTileShape.getVertex(v, vertex);
+				vertices[(i * TerrainChunk.VERTICES_PER_TILE + v) * 2] = vertex.x + tilePosition.x;
+				vertices[(i * TerrainChunk.VERTICES_PER_TILE + v) * 2 + 1] = vertex.y + tilePosition.y;
+			}
+
+			lastTileShape.getVertex(3, vertex);
+			tilePosition.set(lastTile.getWorldPoint(vertex));
 		}
-		return terrainTiles;
+		NativeShapes.dispose(tileShape);
+
+		return new TerrainChunk(index, terrainTiles, vertices, false, tilePosition);
+	}
+
+	/**
+	 * Generates a chunk of consecutive tiles in the provided world, as one static body with a
+	 * chain shape running from the start of each tile to the start of the next.  That is exactly
+	 * the top surface of the tile for all but the steepest tiles, which are cut across instead.<br><br>
+	 *
+	 * The chain's ghost vertices are set to the neighbouring tiles' points, which are worked out
+	 * from the seed whether or not those chunks are built, so wheels roll smoothly over the seam
+	 * between one chunk and the next.
+	 *
+	 * @param world     the world to place the chain in
+	 * @param seed      the seed of the terrain the chunk is part of
+	 * @param index     the index of the chunk along the terrain
+	 * @param firstTile the index (along the whole terrain) of the chunk's first tile
+	 * @param tileCount the number of tiles in the chunk
+	 * @param start     the point the first tile starts at
+	 * @return the generated chunk
+	 */
+	static TerrainChunk createChainChunk(World world, long seed, int index, int firstTile, int tileCount, Vector2 start) {
+		Vector2[] chain = new Vector2[tileCount + 1];
+		float[] vertices = new float[chain.length * 2];
+		Vector2 tilePosition = new Vector2(start);
+		chain[0] = new Vector2(tilePosition);
+
+		// Each tile starts where the last tile's outline put the next one, same as for tile bodies
+		Vector2[] tileVertices = createTileVertices();
+		for (int i = 0; i < tileCount; i++) {
+			tilePosition.add(rotateTileVertices(tileVertices, tileAngle(seed, firstTile + i))[3]);
+			chain[i + 1] = new Vector2(tilePosition);
+		}
+		for (int i = 0; i < chain.length; i++) {
+			vertices[i * 2] = chain[i].x;
+			vertices[i * 2 + 1] = chain[i].y;
+		}
+
+		Body body = world.createBody(new BodyDef());
+		ChainShape chainShape = NativeShapes.newChain();
+		chainShape.createChain(chain);
+		if (firstTile > 0) {
+			Vector2 before = rotateTileVertices(tileVertices, tileAngle(seed, firstTile - 1))[3];
+			chainShape.setPrevVertex(new Vector2(start.x - before.x, start.y - before.y));
+		}
+		Vector2 after = rotateTileVertices(tileVertices, tileAngle(seed, firstTile + tileCount))[3];
+		chainShape.setNextVertex(new Vector2(tilePosition.x + after.x, tilePosition.y + after.y));
+		FixtureDef fixDef = new FixtureDef();
+		fixDef.shape = chainShape;
+		fixDef.friction = 0.5f;
+		body.createFixture(fixDef);
+		NativeShapes.dispose(chainShape);
+
+		List<Body> bodies = new ArrayList<Body>(1);
+		bodies.add(body);
+		return new TerrainChunk(index, bodies, vertices, true, tilePosition);
+	}
+
+	/**
+	 * Picks the angle of a single tile, potentially more extreme the further along the terrain
+	 * it is.
+	 *
+	 * @param seed the seed of the terrain
+	 * @param tile the index of the tile along the terrain
+	 * @return the angle (in radians) to rotate the tile by
+	 */
+	private static double tileAngle(long seed, int tile) {
+		double difficulty = (double) Math.min(tile, MAX_GROUND_PIECES) / MAX_GROUND_PIECES;
+		return (tileRandom(seed, tile) * 3 - 1.5) * 1.5 * difficulty;
+	}
+
+	/**
+	 * Picks the random value for a single tile.  This depends only on the seed and the tile's
+	 * index, so any tile can be generated again without generating the ones before it.
+	 *
+	 * @param seed the seed of the terrain
+	 * @param tile the index of the tile along the terrain
+	 * @return a value between 0 (inclusive) and 1 (exclusive)
+	 */
+	private static double tileRandom(long seed, int tile) {
+		// SplitMix64's finalizer, which scrambles every bit of the combined seed and index
+		long z = seed + (tile + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
 	}
 
 	/**
 	 * Creates a specific tile for the terrain
 	 *
-	 * @param world    the world that the tile is to be placed in
-	 * @param position the position at which the tile should be started at
-	 * @param angle    the angle to rotate the tile by
+	 * @param world       the world that the tile is to be placed in
+	 * @param position    the position at which the tile should be started at
+	 * @param angle       the angle to rotate the tile by
+	 * @param tileBodyDef a reusable body definition
+	 * @param tileFixDef  a reusable fixture definition
+	 * @param tileShape   a reusable shape
 	 * @return the assembled physics body for the terrain tile
 	 */
-	private static Body createTerrainTile(World world, Vector2 position, double angle) {
+	private static Body createTerrainTile(World world, Vector2 position, double angle, BodyDef tileBodyDef, FixtureDef tileFixDef, PolygonShape tileShape) {
 		// Create the physics body for the tile
-		BodyDef tileBodyDef = new BodyDef();
 		tileBodyDef.position.set(position);
 		Body tileBody = world.createBody(tileBodyDef);
 
-		FixtureDef tileFixDef = new FixtureDef();
-
-		// Create the vertices for shape of the tile
-		Vector2[] tileVertices = new Vector2[4];
-		tileVertices[0] = new Vector2(0, 0);
-		tileVertices[1] = new Vector2(0, GROUND_PIECE_HEIGHT);
-		tileVertices[2] = new Vector2(GROUND_PIECE_WIDTH, GROUND_PIECE_HEIGHT);
-		tileVertices[3] = new Vector2(GROUND_PIECE_WIDTH, 0);
-
-		PolygonShape tileShape = new PolygonShape();
-		tileShape.set(rotateTileVertices(tileVertices, angle));
+		tileShape.set(rotateTileVertices(createTileVertices(), angle));
 		tileFixDef.shape = tileShape;
 		tileFixDef.friction = 0.5f;
 
@@ -87,6 +250,18 @@ public class TerrainGenerator {
 		return tileBody;
 	}
 
+	/**
+	 * @return the vertices for the shape of a horizontal tile
+	 */
+	private static Vector2[] createTileVertices() {
+		Vector2[] tileVertices = new Vector2[4];
+		tileVertices[0] = new Vector2(0, 0);
+		tileVertices[1] = new Vector2(0, GROUND_PIECE_HEIGHT);
+		tileVertices[2] = new Vector2(GROUND_PIECE_WIDTH, GROUND_PIECE_HEIGHT);
+		tileVertices[3] = new Vector2(GROUND_PIECE_WIDTH, 0);
+		return tileVertices;
+	}
+
 	/**
 	 * Rotates a set of vertices of a horizontal tile by the angle specified around
 	 * the center (0, 0) coordinate.
@@ -0,0 +1,22 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * How the terrain is built in box2d (see {@link TerrainGenerator}).  Both follow the same tile
+ * angles, but the ground isn't exactly the same shape, so distances from one mode can't be
+ * compared with distances from the other.  This is chosen separately from the
+ * {@link PhysicsProfile}, so profiles can be compared on the same track.
+ *
+ * @author Zach
+ */
+public enum TerrainMode {
+
+	/**
+	 * A separate static body with a polygon per tile, as the simulation has always used
+	 */
+	TILES,
+
+	/**
+	 * A single static body per chunk, with one chain shape tracing the path the tiles follow
+	 */
+	CHAIN
+}
@@ -0,0 +1,54 @@
+package com.zdonnell.geneticcars;
+
+/**
+ * How fast the live evolution runs compared to real time.  Above real time, several physics
+ * steps are run between each snapshot drawn, and at {@link #MAX} the simulation steps as fast as
+ * it can with only the occasional frame drawn to show progress.
+ *
+ * @author Zach
+ */
+public enum TimeWarp {
+
+	NORMAL(1, "1x"),
+	DOUBLE(2, "2x"),
+	TEN(10, "10x"),
+
+	/**
+	 * As fast as the device can step
+	 */
+	MAX(0, "max");
+
+	/**
+	 * How many times faster than real time to run, or 0 for as fast as possible
+	 */
+	private final int factor;
+
+	private final String label;
+
+	TimeWarp(int factor, String label) {
+		this.factor = factor;
+		this.label = label;
+	}
+
+	/**
+	 * @return how many times faster than real time to run, or 0 for as fast as possible
+	 */
+	public int getFactor() {
+		return factor;
+	}
+
+	/**
+	 * @return the short name shown to the user
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * @return the next faster warp, wrapping back around to {@link #NORMAL} after {@link #MAX}
+	 */
+	public TimeWarp next() {
+		TimeWarp[] warps = values();
+		return warps[(ordinal() + 1) % warps.length];
+	}
+}
@@ -0,0 +1,266 @@
+package com.zdonnell.geneticcars;
+
+import com.badlogic.gdx.physics.box2d.Body;
+
+import java.util.Arrays;
+
+/**
+ * The recorded run of a single car: the position and angle of its chassis and each of its wheels
+ * on every simulation step.  Together with the car's definition this is enough to draw the run
+ * again without box2d.<br><br>
+ *
+ * Values are quantized to fixed point (millimeters and ten-thousandths of a radian) and each step
+ * is stored as the difference from the one before it, as variable length integers.  Cars move
+ * very little from one step to the next, so most values take a single byte.  Every
+ * {@link #KEYFRAME_INTERVAL} steps the absolute values are stored instead, so seeking anywhere
+ * only decodes a handful of steps.
+ *
+ * @author Zach
+ */
+public class Trajectory {
+
+	/**
+	 * The number of bodies recorded for each car, the chassis followed by the wheels
+	 */
+	public static final int BODY_COUNT = 1 + CarDefinition.WHEEL_COUNT;
+
+	/**
+	 * The number of values recorded per step: the x, y and angle of each body
+	 */
+	public static final int FRAME_SIZE = BODY_COUNT * 3;
+
+	/**
+	 * The number of steps between each step stored with absolute values
+	 */
+	static final int KEYFRAME_INTERVAL = 64;
+
+	/**
+	 * Positions are stored in millimeters
+	 */
+	private static final float POSITION_SCALE = 1000f;
+
+	/**
+	 * Angles are stored in ten-thousandths of a radian
+	 */
+	private static final float ANGLE_SCALE = 10000f;
+
+	private final CarDefinition definition;
+	private final boolean elite;
+	private final float timeStep;
+	private float distance;
+
+	/**
+	 * The encoded steps
+	 */
+	private byte[] data = new byte[256];
+	private int length = 0;
+	private int frameCount = 0;
+
+	/**
+	 * The offset in {@link #data} of each keyframe
+	 */
+	private int[] keyframes = new int[16];
+
+	/**
+	 * The quantized values of the step being appended
+	 */
+	private final int[] current = new int[FRAME_SIZE];
+
+	/**
+	 * The quantized values of the last step recorded
+	 */
+	private final int[] recorded = new int[FRAME_SIZE];
+
+	/**
+	 * The step last decoded, its quantized values and the offset of the step after it
+	 */
+	private final int[] decoded = new int[FRAME_SIZE];
+	private int decodedFrame = -1;
+	private int decodedOffset;
+
+	/**
+	 * Starts an empty recording.
+	 *
+	 * @param definition the definition of the car being recorded
+	 * @param elite      true if the car is an elite clone
+	 * @param timeStep   the simulated time (in seconds) between each recorded step
+	 */
+	Trajectory(CarDefinition definition, boolean elite, float timeStep) {
+		this.definition = definition;
+		this.elite = elite;
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Records the car's current position.
+	 */
+	void append(Car car) {
+		quantize(car.getChassis(), 0);
+		Body[] wheels = car.getWheels();
+		for (int w = 0; w < wheels.length; w++)
+			quantize(wheels[w], 1 + w);
+
+		ensureCapacity(FRAME_SIZE * 5);
+		boolean keyframe = frameCount % KEYFRAME_INTERVAL == 0;
+		if (keyframe) {
+			int k = frameCount / KEYFRAME_INTERVAL;
+			if (k == keyframes.length)
+				keyframes = Arrays.copyOf(keyframes, k * 2);
+			keyframes[k] = length;
+		}
+
+		for (int i = 0; i < FRAME_SIZE; i++) {
+			int value = current[i];
+			writeVarInt(keyframe ? value : value - recorded[i]);
+			recorded[i] = value;
+		}
+		frameCount++;
+	}
+
+	private void quantize(Body body, int index) {
+		current[index * 3] = Math.round(body.getPosition().x * POSITION_SCALE);
+		current[index * 3 + 1] = Math.round(body.getPosition().y * POSITION_SCALE);
+		current[index * 3 + 2] = Math.round(body.getAngle() * ANGLE_SCALE);
+	}
+
+	/**
+	 * Ends the recording, trimming the buffers down to size.
+	 *
+	 * @param distance the max distance the car reached
+	 */
+	void finish(float distance) {
+		this.distance = distance;
+		data = Arrays.copyOf(data, length);
+		keyframes = Arrays.copyOf(keyframes, (frameCount + KEYFRAME_INTERVAL - 1) / KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * @return the definition of the recorded car
+	 */
+	public CarDefinition getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * @return true if the recorded car was an elite clone
+	 */
+	public boolean isElite() {
+		return elite;
+	}
+
+	/**
+	 * @return the max distance the recorded car reached
+	 */
+	public float getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return the number of steps recorded
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return the simulated length (in seconds) of the recording
+	 */
+	public float getDuration() {
+		return frameCount * timeStep;
+	}
+
+	/**
+	 * @return the size (in bytes) of the encoded steps
+	 */
+	public int getEncodedSize() {
+		return length;
+	}
+
+	/**
+	 * Finds where every body was at a point in the recording, interpolating between the
+	 * recorded steps either side of it.  Playing forwards only decodes each step once, jumping
+	 * elsewhere decodes from the nearest keyframe.  This isn't thread safe, as the decoding position
+	 * is kept between calls.
+	 *
+	 * @param time the time (in simulated seconds) since the start of the recording, clamped to the
+	 *             length of the recording
+	 * @param out  filled with the x, y and angle of the chassis and then each wheel, must hold
+	 *             at least {@link #FRAME_SIZE} values
+	 */
+	public void sample(float time, float[] out) {
+		if (frameCount == 0)
+			throw new IllegalStateException("Nothing has been recorded");
+
+		float position = Math.max(0, Math.min(time / timeStep, frameCount - 1));
+		int frame = (int) position;
+		float blend = position - frame;
+
+		seek(frame);
+		for (int i = 0; i < FRAME_SIZE; i++)
+			out[i] = decoded[i];
+
+		if (frame + 1 < frameCount && blend > 0) {
+			seek(frame + 1);
+			for (int i = 0; i < FRAME_SIZE; i++)
+				out[i] += (decoded[i] - out[i]) * blend;
+		}
+
+		for (int i = 0; i < FRAME_SIZE; i++)
+			out[i] /= (i % 3 == 2) ? ANGLE_SCALE : POSITION_SCALE;
+	}
+
+	/**
+	 * Decodes up to the specified step, starting from the last step decoded if it is on the way
+	 * and from the nearest keyframe otherwise.
+	 */
+	private void seek(int frame) {
+		if (frame == decodedFrame)
+			return;
+
+		if (decodedFrame < 0 || frame < decodedFrame || frame / KEYFRAME_INTERVAL != decodedFrame / KEYFRAME_INTERVAL) {
+			int k = frame / KEYFRAME_INTERVAL;
+			decodedOffset = keyframes[k];
+			for (int i = 0; i < FRAME_SIZE; i++)
+				decoded[i] = readVarInt();
+			decodedFrame = k * KEYFRAME_INTERVAL;
+		}
+
+		while (decodedFrame < frame) {
+			for (int i = 0; i < FRAME_SIZE; i++)
+				decoded[i] += readVarInt();
+			decodedFrame++;
+		}
+	}
+
+	/**
+	 * Writes a zigzag encoded variable length integer, 7 bits per byte.
+	 */
+	private void writeVarInt(int value) {
+		int zigzag = (value << 1) ^ (value >> 31);
+		while ((zigzag & ~0x7F) != 0) {
+			data[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		data[length++] = (byte) zigzag;
+	}
+
+	/**
+	 * Reads a value written by {@link #writeVarInt(int)} at the decoding position.
+	 */
+	private int readVarInt() {
+		int zigzag = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = data[decodedOffset++];
+			zigzag |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > data.length)
+			data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+	}
+}
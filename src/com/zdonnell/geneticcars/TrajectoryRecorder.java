@@ -0,0 +1,108 @@
+package com.zdonnell.geneticcars;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the {@link Trajectory} of cars as an {@link Evaluator} steps them.  Every car handed to
+ * {@link #track(Car)} is recorded while it is alive, but once it dies the recording is only kept
+ * if the car was an elite or went further than any car recorded before it.  The most recent
+ * recordings kept are held on to for replaying.<br><br>
+ *
+ * The recorder is used from the thread stepping the evaluator, only {@link #getBest()} may be called
+ * from other threads.
+ *
+ * @author Zach
+ */
+public class TrajectoryRecorder {
+
+	/**
+	 * The most recordings held on to, the oldest are dropped first
+	 */
+	private static final int MAX_KEPT = 10;
+
+	/**
+	 * The simulated time (in seconds) between each step
+	 */
+	private final float timeStep;
+
+	/**
+	 * The recordings of the cars still alive
+	 */
+	private final Map<Car, Trajectory> recording = new HashMap<Car, Trajectory>();
+
+	/**
+	 * The recordings kept, oldest first
+	 */
+	private final List<Trajectory> kept = new ArrayList<Trajectory>();
+
+	/**
+	 * The recording of the furthest car so far, which may be read from other threads
+	 */
+	private volatile Trajectory best;
+
+	/**
+	 * @param timeStep the simulated time (in seconds) between each step of the evaluator
+	 */
+	public TrajectoryRecorder(float timeStep) {
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Starts recording a car, from the next step onwards.
+	 *
+	 * @param car the car to record
+	 */
+	public void track(Car car) {
+		recording.put(car, new Trajectory(car.getCarDefinition(), car.isElite, timeStep));
+	}
+
+	/**
+	 * Records the current position of every car being tracked.  The evaluator calls this after
+	 * every step.
+	 */
+	void record() {
+		for (Map.Entry<Car, Trajectory> entry : recording.entrySet())
+			entry.getValue().append(entry.getKey());
+	}
+
+	/**
+	 * Stops recording a car, which is about to be removed from its world, and decides whether to
+	 * keep the recording.
+	 *
+	 * @param car the car that died
+	 */
+	void stop(Car car) {
+		Trajectory trajectory = recording.remove(car);
+		if (trajectory == null || trajectory.getFrameCount() == 0)
+			return;
+
+		boolean recordSetter = best == null || car.maxDistance > best.getDistance();
+		if (!recordSetter && !car.isElite)
+			return;
+
+		trajectory.finish(car.maxDistance);
+		if (recordSetter)
+			best = trajectory;
+
+		kept.add(trajectory);
+		if (kept.size() > MAX_KEPT)
+			kept.remove(0);
+	}
+
+	/**
+	 * @return the recording of the furthest car so far, or null if nothing has been recorded
+	 */
+	public Trajectory getBest() {
+		return best;
+	}
+
+	/**
+	 * @return the most recent recordings kept, oldest first
+	 */
+	public List<Trajectory> getKept() {
+		return kept;
+	}
+}
@@ -1,21 +1,22 @@
 package com.zdonnell.geneticcars;
 
 /**
- * Similar to {@link CarDefinition} this class is primarily a blueprint
- * for the {@link CarFactory} to build box2d physics objects for the wheels
- * from.
+ * Similar to {@link CarDefinition} this class describes the wheels that the {@link CarFactory}
+ * builds box2d physics objects from.  A wheel's attributes are stored directly in the car
+ * definition's genome, so this class only holds the limits of those attributes and
+ * generates random values within them.
  */
 public class Wheel {
 
 	/**
 	 * The largest a wheel can be
 	 */
-	public final static double WHEEL_MAX_RADIUS = 0.5;
+	public final static float WHEEL_MAX_RADIUS = 0.5f;
 
 	/**
 	 *  The smallest a wheel can be
 	 */
-	public final static double WHEEL_MIN_RADIUS = 0.2;
+	public final static float WHEEL_MIN_RADIUS = 0.2f;
 
 	/**
 	 * The maximum density (in box2d) for a wheel
@@ -27,82 +28,45 @@ public class Wheel {
 	 */
 	public final static int WHEEL_MIN_DENSITY = 40;
 
+	/**
+	 * The number of attributes (genes) describing each wheel: density, radius and mount vertex
+	 */
+	public final static int ATTRIBUTE_COUNT = 3;
+
+	private Wheel() {
+	}
+
 	/**
 	 * How dense the wheel is (more dense means more weight for the same radius)
 	 *
+	 * @param rng the random numbers to pick it with
+	 * @return a random density
 	 * @see {@link #WHEEL_MAX_DENSITY}
 	 * @see {@link #WHEEL_MIN_DENSITY}
 	 */
-	private double density;
+	public static float randomDensity(Rng rng) {
+		return rng.nextFloat() * WHEEL_MAX_DENSITY + WHEEL_MIN_DENSITY;
+	}
 
 	/**
 	 * Radius of the wheel
 	 *
+	 * @param rng the random numbers to pick it with
+	 * @return a random radius
 	 * @see {@link #WHEEL_MAX_RADIUS}
 	 * @see {@link #WHEEL_MIN_RADIUS}
 	 */
-	private double radius;
-
-	/**
-	 * The mount point for the wheel on the car chassis, as a vertex number
-	 */
-	private int vertex;
-
-	/**
-	 * Generates a random wheel
-	 */
-	public Wheel() {
-		density = Math.random() * WHEEL_MAX_DENSITY + WHEEL_MIN_DENSITY;
-		radius = Math.random() * WHEEL_MAX_RADIUS + WHEEL_MIN_RADIUS;
-		vertex = (int) Math.floor(Math.random() * 8) % 8;
+	public static float randomRadius(Rng rng) {
+		return rng.nextFloat() * WHEEL_MAX_RADIUS + WHEEL_MIN_RADIUS;
 	}
 
 	/**
-	 * Generates a wheel with the specified attributes
-	 *
-	 * @param density
-	 * @param radius
-	 * @param vertex
-	 */
-	public Wheel(double density, double radius, int vertex) {
-		this.density = density;
-		this.radius = radius;
-		this.vertex = vertex;
-	}
-
-	/**
-	 * This method is available so during reproduction, the parent car
-	 * can have it's wheel's mutate
+	 * The mount point for the wheel on the car chassis, as a vertex number
 	 *
-	 * @see {@link Car#mutate(float)}
-	 */
-	public void mutate(float mutateFactor) {
-		if (Math.random() < mutateFactor)
-			density = Math.random() * WHEEL_MAX_DENSITY + WHEEL_MIN_DENSITY;
-		if (Math.random() < mutateFactor)
-			radius = Math.random() * WHEEL_MAX_RADIUS + WHEEL_MIN_RADIUS;
-		if (Math.random() < mutateFactor)
-			vertex = (int) Math.floor(Math.random() * 8) % 8;
-	}
-
-	/**
-	 * @return the wheel's density attribute.
-	 */
-	public double getDensity() {
-		return density;
-	}
-
-	/**
-	 * @return the wheel's radius attribute.
-	 */
-	public double getRadius() {
-		return radius;
-	}
-
-	/**
-	 * @return the wheel's mount vertex
+	 * @param rng the random numbers to pick it with
+	 * @return a random vertex number
 	 */
-	public int getVertex() {
-		return vertex;
+	public static int randomVertex(Rng rng) {
+		return rng.nextInt(8);
 	}
-}
\ No newline at end of file
+}
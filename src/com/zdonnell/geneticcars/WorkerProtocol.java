@@ -0,0 +1,146 @@
+package com.zdonnell.geneticcars;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The messages passed between a {@link RemoteEvaluator} and its {@link EvaluationWorker}s.  There is
+ * no need to instantiate this class as all methods are static.<br><br>
+ *
+ * Once a worker connects, the coordinator sends a handshake with the terrain seed, physics
+ * settings and terrain mode.  From then on the coordinator sends one batch of genomes at a time and the worker
+ * answers each with the distances the cars made it, until the coordinator sends
+ * {@link #END_OF_WORK} in place of a batch size.
+ *
+ * @author Zach
+ */
+final class WorkerProtocol {
+
+	/**
+	 * Sent at the start of the handshake, so a stray connection is rejected straight away
+	 */
+	private static final int MAGIC = 0x47434152;
+
+	/**
+	 * Bumped whenever the layout of any message changes
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Sent in place of a batch size to tell the worker to exit
+	 */
+	static final int END_OF_WORK = -1;
+
+	private WorkerProtocol() {
+	}
+
+	/**
+	 * Sends the settings every batch is evaluated with.
+	 */
+	static void writeHandshake(DataOutputStream out, long terrainSeed, PhysicsProfile profile, TerrainMode terrainMode) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(terrainSeed);
+		out.writeUTF(profile.name());
+		out.writeUTF(terrainMode.name());
+		out.flush();
+	}
+
+	/**
+	 * Reads the handshake, checking it came from a coordinator speaking the same version.
+	 *
+	 * @return the terrain seed, the physics profile and terrain mode are read with
+	 *         {@link #readProfile(DataInputStream)} and {@link #readTerrainMode(DataInputStream)}
+	 */
+	static long readHandshake(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a genetic cars coordinator");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported protocol version " + version);
+		return in.readLong();
+	}
+
+	/**
+	 * Reads the physics profile that follows the terrain seed in the handshake.
+	 */
+	static PhysicsProfile readProfile(DataInputStream in) throws IOException {
+		try {
+			return PhysicsProfile.valueOf(in.readUTF());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown physics profile", e);
+		}
+	}
+
+	/**
+	 * Reads the terrain mode that follows the physics profile in the handshake.
+	 */
+	static TerrainMode readTerrainMode(DataInputStream in) throws IOException {
+		try {
+			return TerrainMode.valueOf(in.readUTF());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown terrain mode", e);
+		}
+	}
+
+	/**
+	 * Sends a batch of cars to evaluate.
+	 */
+	static void writeBatch(DataOutputStream out, CarDefinition[] definitions, int start, int count) throws IOException {
+		out.writeInt(count);
+		for (int i = start; i < start + count; i++) {
+			float[] genes = definitions[i].getGenes();
+			for (int g = 0; g < CarDefinition.GENOME_LENGTH; g++)
+				out.writeFloat(genes[g]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a batch of cars to evaluate.
+	 *
+	 * @return the cars, or null once the coordinator has sent {@link #END_OF_WORK}
+	 */
+	static CarDefinition[] readBatch(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count == END_OF_WORK)
+			return null;
+		if (count < 0)
+			throw new IOException("Invalid batch size " + count);
+
+		CarDefinition[] definitions = new CarDefinition[count];
+		for (int i = 0; i < count; i++) {
+			float[] genes = new float[CarDefinition.GENOME_LENGTH];
+			for (int g = 0; g < genes.length; g++)
+				genes[g] = in.readFloat();
+			definitions[i] = new CarDefinition(genes);
+		}
+		return definitions;
+	}
+
+	/**
+	 * Sends the distances each car of a batch made it.
+	 */
+	static void writeResults(DataOutputStream out, float[] distances) throws IOException {
+		out.writeInt(distances.length);
+		for (float distance : distances)
+			out.writeFloat(distance);
+		out.flush();
+	}
+
+	/**
+	 * Reads the distances for a batch straight into the generation's results.
+	 *
+	 * @param distances the results of the whole generation
+	 * @param start     the index of the batch's first car in the generation
+	 * @param count     the number of cars in the batch
+	 */
+	static void readResults(DataInputStream in, float[] distances, int start, int count) throws IOException {
+		int received = in.readInt();
+		if (received != count)
+			throw new IOException("Expected " + count + " results but received " + received);
+		for (int i = start; i < start + count; i++)
+			distances[i] = in.readFloat();
+	}
+}